@@ -0,0 +1,163 @@
+package org.sarge.lib.element;
+
+import java.util.*;
+
+/**
+ * An <i>attribute map</i> is a compact, immutable map for a small number of element attributes.
+ * <p>
+ * The attributes are stored as a flat array of alternating names and values, i.e. the map does not allocate an entry or hash table per attribute.
+ * Look-ups are a linear scan which is faster than hashing for the small attribute sets typical of most documents.
+ * <p>
+ * @author Sarge
+ */
+final class AttributeMap extends AbstractMap<String, String> {
+	/**
+	 * Maximum number of attributes stored as a flat array.
+	 */
+	static final int MAX = 8;
+
+	/**
+	 * Creates a compact copy of the given attributes.
+	 * <p>
+	 * Small attribute sets are stored as a flat array, larger sets fall back to an immutable hashed map.
+	 * <p>
+	 * @param attributes Attributes
+	 * @return Compact attributes
+	 */
+	static Map<String, String> of(Map<String, String> attributes) {
+		final int size = attributes.size();
+		if(size == 0) {
+			return Map.of();
+		}
+		else
+		if(attributes instanceof AttributeMap) {
+			return attributes;
+		}
+		else
+		if(size > MAX) {
+			return Map.copyOf(attributes);
+		}
+		else {
+			final String[] entries = new String[size * 2];
+			int index = 0;
+			for(Entry<String, String> entry : attributes.entrySet()) {
+				entries[index++] = Objects.requireNonNull(entry.getKey());
+				entries[index++] = Objects.requireNonNull(entry.getValue());
+			}
+			return new AttributeMap(entries);
+		}
+	}
+
+	/**
+	 * Creates a compact copy of the given range of a flat array of attributes.
+	 * @param entries		Flat array of alternating attribute names and values
+	 * @param from			Start index
+	 * @param to			End index (exclusive)
+	 * @return Compact attributes
+	 */
+	static Map<String, String> of(String[] entries, int from, int to) {
+		final int size = (to - from) / 2;
+		if(size == 0) {
+			return Map.of();
+		}
+		else
+		if(size > MAX) {
+			final Map<String, String> map = new HashMap<>();
+			for(int n = from; n < to; n += 2) {
+				map.put(entries[n], entries[n + 1]);
+			}
+			return Map.copyOf(map);
+		}
+		else {
+			return new AttributeMap(Arrays.copyOfRange(entries, from, to));
+		}
+	}
+
+	private final String[] entries;
+
+	/**
+	 * Constructor.
+	 * @param entries Flat array of alternating attribute names and values
+	 */
+	private AttributeMap(String[] entries) {
+		this.entries = entries;
+	}
+
+	@Override
+	public int size() {
+		return entries.length / 2;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return entries.length == 0;
+	}
+
+	/**
+	 * @return Index of the value of the given attribute or {@code -1} if not present
+	 */
+	private int find(Object name) {
+		for(int n = 0; n < entries.length; n += 2) {
+			if(entries[n].equals(name)) {
+				return n + 1;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean containsKey(Object name) {
+		return find(name) >= 0;
+	}
+
+	@Override
+	public String get(Object name) {
+		final int index = find(name);
+		if(index < 0) {
+			return null;
+		}
+		else {
+			return entries[index];
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		// Equivalent to the sum of the entry hashes without allocating entries
+		int hash = 0;
+		for(int n = 0; n < entries.length; n += 2) {
+			hash += entries[n].hashCode() ^ entries[n + 1].hashCode();
+		}
+		return hash;
+	}
+
+	@Override
+	public Set<Entry<String, String>> entrySet() {
+		return new AbstractSet<>() {
+			@Override
+			public int size() {
+				return AttributeMap.this.size();
+			}
+
+			@Override
+			public Iterator<Entry<String, String>> iterator() {
+				return new Iterator<>() {
+					private int index;
+
+					@Override
+					public boolean hasNext() {
+						return index < entries.length;
+					}
+
+					@Override
+					public Entry<String, String> next() {
+						if(index >= entries.length) throw new NoSuchElementException();
+						final var entry = new SimpleImmutableEntry<>(entries[index], entries[index + 1]);
+						index += 2;
+						return entry;
+					}
+				};
+			}
+		};
+	}
+}
@@ -1,11 +1,11 @@
 package org.sarge.lib.element;
 
-import static java.util.stream.Collectors.*;
 import static org.sarge.lib.util.Check.*;
 
+import java.io.*;
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Stream;
+import java.util.function.*;
+import java.util.stream.*;
 
 import org.sarge.lib.util.*;
 
@@ -20,7 +20,7 @@ import org.sarge.lib.util.*;
  * <li>none-or-more children</li>
  * </ul>
  * <p>
- * The {@link Builder} provides a fluid interface to construct a document:
+ * The {@link Builder} provides a fluid interface to construct a document, optionally canonicalising element and attribute names via a {@link SymbolTable}:
  * <p>
  * <pre>
  * Element element = new Element.Builder()
@@ -39,14 +39,86 @@ import org.sarge.lib.util.*;
  * throw element.new ElementException(...);
  * </pre>
  * <p>
+ * Capturing the stack trace of an element exception can be disabled for failure-heavy workloads, see {@link #stackTraces(boolean)}.
+ * <p>
+ * Elements are stored compactly to minimise the footprint of large documents:
+ * small attribute sets are stored as a flat array and the children are an immutable, exactly sized list that is shared by all leaf elements.
+ * <p>
+ * An element can also be <i>deferred</i>, i.e. its attributes, text content and children are only materialised from an underlying {@link Source} when first accessed, see {@link ElementLoader#lazy(java.nio.file.Path)}.
+ * A deferred element is otherwise indistinguishable from a fully materialised element, noting that the structural hash (and therefore equality) materialises the entire sub-tree.
+ * <p>
  * @author Sarge
  */
 public final class Element {
+	/**
+	 * Minimum number of children for which an index of the children by name is created.
+	 */
+	private static final int INDEX_THRESHOLD = 16;
+
+	/**
+	 * The contents of a deferred element.
+	 * @param attributes		Attributes indexed by name
+	 * @param text				Text content or {@code null} if none
+	 * @param children			Children
+	 */
+	record Contents(Map<String, String> attributes, String text, List<Element> children) {
+	}
+
+	/**
+	 * A <i>source</i> materialises the contents of a deferred element.
+	 */
+	@FunctionalInterface
+	interface Source {
+		/**
+		 * Loads the contents of a deferred element.
+		 * @return Contents
+		 * @throws IOException if the contents cannot be loaded
+		 */
+		Contents load() throws IOException;
+	}
+
+	/**
+	 * Marker for a deferred element that has been materialised but not yet hashed.
+	 */
+	private static final Source LOADED = () -> {
+		throw new IllegalStateException();
+	};
+
+	/**
+	 * Creates a deferred element.
+	 * @param name			Element name
+	 * @param source		Source of the contents of this element
+	 * @return Deferred element
+	 */
+	static Element deferred(String name, Source source) {
+		return new Element(notEmpty(name), notNull(source));
+	}
+
+	private static volatile boolean stackTraces = true;
+
+	/**
+	 * Sets whether an {@link ElementException} captures a stack trace (default is {@code true}).
+	 * <p>
+	 * Filling in the stack trace generally dominates the cost of an exception.
+	 * Disabling stack traces is intended for workloads that probe optional or invalid data in bulk, e.g. using {@link LoaderRegistry#tryLoad(Element)}.
+	 * Note that this setting is global and only applies to subsequently created exceptions.
+	 * <p>
+	 * @param enabled Whether element exceptions capture a stack trace
+	 */
+	public static void stackTraces(boolean enabled) {
+		stackTraces = enabled;
+	}
+
 	private final String name;
-	private final Map<String, String> attributes;
-	private final String text;
-	private final List<Element> children = new ArrayList<>();
+	private Map<String, String> attributes;
+	private String text;
+	private List<Element> children = List.of();
 	private Element parent;
+	private int index = 1;
+	private String location;
+	private int hash;
+	private volatile Map<String, List<Element>> lookup;
+	private volatile Source source;
 
 	/**
 	 * Constructor.
@@ -56,8 +128,9 @@ public final class Element {
 	 */
 	public Element(String name, Map<String, String> attributes, String text) {
 		this.name = notEmpty(name);
-		this.attributes = Map.copyOf(attributes);
+		this.attributes = AttributeMap.of(attributes);
 		this.text = text;
+		this.hash = hash();
 	}
 
 	/**
@@ -74,7 +147,52 @@ public final class Element {
 	 * @param name Element name
 	 */
 	public Element(String name) {
-		this(name, null);
+		this(name, (String) null);
+	}
+
+	/**
+	 * Constructor for a deferred element.
+	 * @param name			Element name
+	 * @param source		Source
+	 */
+	private Element(String name, Source source) {
+		this.name = name;
+		this.attributes = Map.of();
+		this.source = source;
+	}
+
+	/**
+	 * Materialises this element if it is deferred.
+	 * @throws UncheckedIOException if the contents of this element cannot be loaded
+	 */
+	private void load() {
+		final Source s = source;
+		if((s != null) && (s != LOADED)) {
+			materialise();
+		}
+	}
+
+	/**
+	 * Loads the contents of this deferred element.
+	 */
+	private synchronized void materialise() {
+		final Source s = source;
+		if((s == null) || (s == LOADED)) {
+			return;
+		}
+
+		final Contents contents;
+		try {
+			contents = s.load();
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		attributes = AttributeMap.of(contents.attributes);
+		text = contents.text;
+		link(contents.children);
+		source = LOADED;
 	}
 
 	/**
@@ -85,7 +203,181 @@ public final class Element {
 	private void parent(Element parent) {
 		if(this.parent != null) throw new IllegalStateException("Element already has a parent: " + this);
 		this.parent = notNull(parent);
-		parent.children.add(this);
+		if(location != null) {
+			invalidate();
+		}
+	}
+
+	/**
+	 * Clears the cached location of this element and its descendants after it has been attached to a parent.
+	 * Note that the location of a descendant can only have been cached if the location of its parent is also cached.
+	 * @see #location()
+	 */
+	private void invalidate() {
+		final Deque<Element> stack = new ArrayDeque<>();
+		stack.push(this);
+		while(!stack.isEmpty()) {
+			final Element e = stack.pop();
+			e.location = null;
+			for(Element child : e.children) {
+				if(child.location != null) {
+					stack.push(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Attaches the children of this element.
+	 * @param children Children
+	 * @throws IllegalStateException if any child already has a parent
+	 */
+	private void attach(List<Element> children) {
+		link(children);
+		this.hash = hash();
+	}
+
+	/**
+	 * Links the children of this element.
+	 * @param children Children
+	 * @throws IllegalStateException if any child already has a parent
+	 */
+	private void link(List<Element> children) {
+		index(children);
+		this.children = List.copyOf(children);
+	}
+
+	/**
+	 * Sets the parent and sibling index of the given children.
+	 * <p>
+	 * The sibling index of a child is determined by scanning back to the previous sibling with the same name, wider elements use a temporary table of the sibling counts.
+	 * <p>
+	 * @param children Children
+	 * @throws IllegalStateException if any child already has a parent
+	 */
+	private void index(List<Element> children) {
+		final int size = children.size();
+		if(size < INDEX_THRESHOLD) {
+			for(int n = 0; n < size; ++n) {
+				final Element e = children.get(n);
+				e.parent(this);
+				for(int prev = n - 1; prev >= 0; --prev) {
+					final Element sibling = children.get(prev);
+					if(sibling.name.equals(e.name)) {
+						e.index = sibling.index + 1;
+						break;
+					}
+				}
+			}
+		}
+		else {
+			final Map<String, Integer> siblings = new HashMap<>();
+			for(Element e : children) {
+				e.parent(this);
+				e.index = siblings.merge(e.name, 1, Integer::sum);
+			}
+		}
+	}
+
+	/**
+	 * Creates an element from pre-built contents.
+	 * @param name				Element name
+	 * @param attributes		Attributes indexed by name
+	 * @param text				Text content or {@code null} if none
+	 * @param children			Exactly sized array of children, which is owned by the new element
+	 * @return New element
+	 * @see TreeBuilder
+	 */
+	static Element of(String name, Map<String, String> attributes, String text, Element[] children) {
+		return new Element(notEmpty(name), AttributeMap.of(attributes), text, children);
+	}
+
+	/**
+	 * Constructor for an element with pre-built contents.
+	 * @see #of(String, Map, String, Element[])
+	 */
+	private Element(String name, Map<String, String> attributes, String text, Element[] children) {
+		this.name = name;
+		this.attributes = attributes;
+		this.text = text;
+		if(children.length > 0) {
+			final List<Element> list = new ChildList(children);
+			index(list);
+			this.children = list;
+		}
+		this.hash = hash();
+	}
+
+	/**
+	 * Immutable list of children that wraps an array owned by the parent element, avoiding the copy of {@link List#copyOf(java.util.Collection)}.
+	 */
+	private static final class ChildList extends AbstractList<Element> implements RandomAccess {
+		private final Element[] children;
+
+		/**
+		 * Constructor.
+		 * @param children Children
+		 */
+		ChildList(Element[] children) {
+			this.children = children;
+		}
+
+		@Override
+		public Element get(int index) {
+			return children[index];
+		}
+
+		@Override
+		public int size() {
+			return children.length;
+		}
+	}
+
+	/**
+	 * Computes the <i>structural hash</i> of this element.
+	 * <p>
+	 * The hash is derived from the properties of this element and the hashes of its children (but not the parent) and is computed once when the element is constructed.
+	 * Structurally equal trees therefore have the same hash, and trees with differing hashes can be distinguished in constant time.
+	 * <p>
+	 * @return Structural hash
+	 */
+	private int hash() {
+		int h = name.hashCode();
+		h = 31 * h + Objects.hashCode(text);
+		h = 31 * h + attributes.hashCode();
+		for(Element e : children) {
+			h = 31 * h + e.hashCode();
+		}
+		return h;
+	}
+
+	/**
+	 * Materialises and hashes the deferred elements of the given sub-tree.
+	 * @param root Root of the sub-tree
+	 */
+	private static void hash(Element root) {
+		// Materialise sub-tree and order elements such that children are hashed before their parent
+		final Deque<Element> stack = new ArrayDeque<>();
+		final Deque<Element> order = new ArrayDeque<>();
+		stack.push(root);
+		while(!stack.isEmpty()) {
+			final Element e = stack.pop();
+			if(e.source == null) {
+				continue;
+			}
+			e.load();
+			order.push(e);
+			for(Element child : e.children) {
+				stack.push(child);
+			}
+		}
+
+		// Hash elements
+		while(!order.isEmpty()) {
+			final Element e = order.pop();
+			e.hash = e.hash();
+			e.source = null;
+		}
 	}
 
 	/**
@@ -99,6 +391,7 @@ public final class Element {
 	 * @return Whether this is an empty element with no children or attributes
 	 */
 	public boolean isEmpty() {
+		load();
 		return children.isEmpty() && attributes.isEmpty();
 	}
 
@@ -106,6 +399,7 @@ public final class Element {
 	 * @return Attributes indexed by name
 	 */
 	public Map<String, String> attributes() {
+		load();
 		return attributes;
 	}
 
@@ -130,7 +424,7 @@ public final class Element {
 		 * @throws ElementException if this content is not present
 		 */
 		private void check() {
-			if(value == null) throw exception(message());
+			if(value == null) throw new ElementException(this::message);
 		}
 
 		/**
@@ -161,7 +455,8 @@ public final class Element {
 		 * @throws ElementException if this content is not a valid integer
 		 */
 		public int toInteger() {
-			return transform(Integer::parseInt);
+			check();
+			return parseInt(value);
 		}
 
 		/**
@@ -170,7 +465,8 @@ public final class Element {
 		 * @throws ElementException if this content is not a valid floating-point value
 		 */
 		public float toFloat() {
-			return transform(Float::parseFloat);
+			check();
+			return parseFloat(value);
 		}
 
 		/**
@@ -180,7 +476,8 @@ public final class Element {
 		 * @see Converter#BOOLEAN
 		 */
 		public boolean toBoolean() {
-			return transform(Converter.BOOLEAN::apply);
+			check();
+			return parseBoolean(value);
 		}
 
 		@Override
@@ -196,6 +493,7 @@ public final class Element {
 	 * @return Attribute
 	 */
 	public Content attribute(String name) {
+		load();
 		return new Content(attributes.get(name)) {
 			@Override
 			protected String message() {
@@ -208,6 +506,7 @@ public final class Element {
 	 * @return Text content
 	 */
 	public Content text() {
+		load();
 		return new Content(text) {
 			@Override
 			protected String message() {
@@ -216,6 +515,273 @@ public final class Element {
 		};
 	}
 
+	/*
+	 * Typed accessors that return a default value for missing content rather than allocating a {@link Content} or throwing an exception.
+	 */
+
+	/**
+	 * Retrieves an integer attribute.
+	 * @param name		Attribute name
+	 * @param def		Default value if the attribute is not present
+	 * @return Integer attribute
+	 * @throws ElementException if the attribute is not a valid integer
+	 */
+	public int intAttribute(String name, int def) {
+		load();
+		final String value = attributes.get(name);
+		if(value == null) {
+			return def;
+		}
+		else {
+			return parseInt(value);
+		}
+	}
+
+	/**
+	 * Retrieves a long attribute.
+	 * @param name		Attribute name
+	 * @param def		Default value if the attribute is not present
+	 * @return Long attribute
+	 * @throws ElementException if the attribute is not a valid long
+	 */
+	public long longAttribute(String name, long def) {
+		load();
+		final String value = attributes.get(name);
+		if(value == null) {
+			return def;
+		}
+		else {
+			return parseLong(value);
+		}
+	}
+
+	/**
+	 * Retrieves a floating-point attribute.
+	 * Note that this method is only allocation-free for plain decimal values, i.e. an optional sign, digits and an optional fraction.
+	 * @param name		Attribute name
+	 * @param def		Default value if the attribute is not present
+	 * @return Floating-point attribute
+	 * @throws ElementException if the attribute is not a valid floating-point value
+	 */
+	public float floatAttribute(String name, float def) {
+		load();
+		final String value = attributes.get(name);
+		if(value == null) {
+			return def;
+		}
+		else {
+			return parseFloat(value);
+		}
+	}
+
+	/**
+	 * Retrieves a boolean attribute.
+	 * @param name		Attribute name
+	 * @param def		Default value if the attribute is not present
+	 * @return Boolean attribute
+	 * @throws ElementException if the attribute is not a valid boolean
+	 * @see Converter#BOOLEAN
+	 */
+	public boolean booleanAttribute(String name, boolean def) {
+		load();
+		final String value = attributes.get(name);
+		if(value == null) {
+			return def;
+		}
+		else {
+			return parseBoolean(value);
+		}
+	}
+
+	/**
+	 * Retrieves the text content of this element as an integer.
+	 * @param def Default value if this element does not have text content
+	 * @return Integer text content
+	 * @throws ElementException if the text is not a valid integer
+	 */
+	public int intText(int def) {
+		load();
+		if(text == null) {
+			return def;
+		}
+		else {
+			return parseInt(text);
+		}
+	}
+
+	/**
+	 * Retrieves the text content of this element as a long.
+	 * @param def Default value if this element does not have text content
+	 * @return Long text content
+	 * @throws ElementException if the text is not a valid long
+	 */
+	public long longText(long def) {
+		load();
+		if(text == null) {
+			return def;
+		}
+		else {
+			return parseLong(text);
+		}
+	}
+
+	/**
+	 * Retrieves the text content of this element as a floating-point value.
+	 * Note that this method is only allocation-free for plain decimal text, i.e. an optional sign, digits and an optional fraction.
+	 * @param def Default value if this element does not have text content
+	 * @return Floating-point text content
+	 * @throws ElementException if the text is not a valid floating-point value
+	 */
+	public float floatText(float def) {
+		load();
+		if(text == null) {
+			return def;
+		}
+		else {
+			return parseFloat(text);
+		}
+	}
+
+	/**
+	 * Retrieves the text content of this element as a boolean.
+	 * @param def Default value if this element does not have text content
+	 * @return Boolean text content
+	 * @throws ElementException if the text is not a valid boolean
+	 */
+	public boolean booleanText(boolean def) {
+		load();
+		if(text == null) {
+			return def;
+		}
+		else {
+			return parseBoolean(text);
+		}
+	}
+
+	/**
+	 * Parses an integer without boxing.
+	 * @throws ElementException if the value is not a valid integer
+	 */
+	private int parseInt(String value) {
+		try {
+			return Integer.parseInt(value);
+		}
+		catch(NumberFormatException e) {
+			throw exception(e.getMessage());
+		}
+	}
+
+	/**
+	 * Parses a long without boxing.
+	 * @throws ElementException if the value is not a valid long
+	 */
+	private long parseLong(String value) {
+		try {
+			return Long.parseLong(value);
+		}
+		catch(NumberFormatException e) {
+			throw exception(e.getMessage());
+		}
+	}
+
+	/**
+	 * Parses a floating-point value without boxing.
+	 * @throws ElementException if the value is not a valid floating-point value
+	 * @see #decimal(String)
+	 */
+	private float parseFloat(String value) {
+		final float result = decimal(value);
+		if(!Float.isNaN(result)) {
+			return result;
+		}
+
+		try {
+			return Float.parseFloat(value);
+		}
+		catch(NumberFormatException e) {
+			throw exception(e.getMessage());
+		}
+	}
+
+	/**
+	 * Powers of ten that are exactly representable as a float.
+	 */
+	private static final float[] POWERS = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+	/**
+	 * Allocation-free parser for a plain decimal, i.e. an optional sign, digits and an optional fraction.
+	 * <p>
+	 * The result is correctly rounded since the mantissa and the power of ten are both exactly representable, i.e. the value is the result of a single IEEE division.
+	 * Other forms (exponents, a mantissa of 2<sup>24</sup> or more, more than 10 fractional digits, whitespace, {@code NaN}, infinity, hexadecimal or type suffixes) are not handled and delegate to {@link Float#parseFloat(String)} which allocates.
+	 * <p>
+	 * @param value Value
+	 * @return Parsed value or {@code NaN} if not a plain decimal
+	 */
+	private static float decimal(String value) {
+		final int len = value.length();
+		int pos = 0;
+		boolean negative = false;
+		if((len > 0) && ((value.charAt(0) == '-') || (value.charAt(0) == '+'))) {
+			negative = value.charAt(0) == '-';
+			++pos;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int scale = -1;
+		for(; pos < len; ++pos) {
+			final char ch = value.charAt(pos);
+			if((ch >= '0') && (ch <= '9')) {
+				mantissa = mantissa * 10 + (ch - '0');
+				if(mantissa >= (1 << 24)) {
+					return Float.NaN;
+				}
+				++digits;
+				if(scale >= 0) {
+					++scale;
+				}
+			}
+			else
+			if((ch == '.') && (scale < 0)) {
+				scale = 0;
+			}
+			else {
+				return Float.NaN;
+			}
+		}
+
+		if((digits == 0) || (scale >= POWERS.length)) {
+			return Float.NaN;
+		}
+
+		float result = mantissa;
+		if(scale > 0) {
+			result = result / POWERS[scale];
+		}
+		if(negative) {
+			result = -result;
+		}
+		return result;
+	}
+
+	/**
+	 * Parses a case insensitive boolean without boxing.
+	 * @throws ElementException if the value is not a valid boolean
+	 * @see Converter#BOOLEAN
+	 */
+	private boolean parseBoolean(String value) {
+		if(value.equalsIgnoreCase("true")) {
+			return true;
+		}
+		else
+		if(value.equalsIgnoreCase("false")) {
+			return false;
+		}
+		else {
+			throw exception("Invalid boolean: " + value);
+		}
+	}
+
 	/**
 	 * @return Parent of this element
 	 */
@@ -227,6 +793,7 @@ public final class Element {
 	 * @return Number of children
 	 */
 	public int size() {
+		load();
 		return children.size();
 	}
 
@@ -234,16 +801,96 @@ public final class Element {
 	 * @return Children of this element
 	 */
 	public Stream<Element> children() {
+		load();
 		return children.stream();
 	}
 
+	/**
+	 * Iteratively traverses the descendants of this element (excluding this element) in document order.
+	 * The resultant stream can be split evenly for parallel processing.
+	 * @return Descendants of this element
+	 * @see TreeSpliterator
+	 */
+	public Stream<Element> descendants() {
+		return descendants(TreeSpliterator.Order.PRE, __ -> false);
+	}
+
+	/**
+	 * Iteratively traverses the descendants of this element (excluding this element).
+	 * @param order			Traversal order
+	 * @param prune			Predicate for elements that are excluded along with their sub-tree
+	 * @return Descendants of this element
+	 */
+	public Stream<Element> descendants(TreeSpliterator.Order order, Predicate<Element> prune) {
+		final var spliterator = new TreeSpliterator<Element>(childList(), Element::childList, order, prune);
+		return StreamSupport.stream(spliterator, false);
+	}
+
+	/**
+	 * @return Immutable list of the children of this element
+	 */
+	List<Element> childList() {
+		load();
+		return children;
+	}
+
 	/**
 	 * Convenience accessor for the children of this element with the given name.
 	 * @param name Child name
 	 * @return Children with the given name
 	 */
 	public Stream<Element> children(String name) {
-		return children.stream().filter(e -> e.name.equals(name));
+		load();
+		if(children.size() < INDEX_THRESHOLD) {
+			return children.stream().filter(e -> e.name.equals(name));
+		}
+		else {
+			return named(name).stream();
+		}
+	}
+
+	/**
+	 * Retrieves the children of this element with the given name.
+	 * @param name Child name
+	 * @return Children with the given name
+	 * @see #lookup()
+	 */
+	List<Element> named(String name) {
+		load();
+		if(children.size() < INDEX_THRESHOLD) {
+			final List<Element> list = new ArrayList<>();
+			for(Element e : children) {
+				if(e.name.equals(name)) {
+					list.add(e);
+				}
+			}
+			return list;
+		}
+		else {
+			return lookup().getOrDefault(name, List.of());
+		}
+	}
+
+	/**
+	 * Lazily builds the index of the children of this element by name.
+	 * <p>
+	 * The index is only created for elements with a large number of children, see {@link #INDEX_THRESHOLD}.
+	 * Initialisation is thread-safe: the index is immutable and published via a volatile field, at worst it is built more than once by concurrent callers.
+	 * <p>
+	 * @return Children indexed by name
+	 */
+	private Map<String, List<Element>> lookup() {
+		Map<String, List<Element>> result = lookup;
+		if(result == null) {
+			final Map<String, List<Element>> map = new HashMap<>();
+			for(Element e : children) {
+				map.computeIfAbsent(e.name, __ -> new ArrayList<>()).add(e);
+			}
+			map.replaceAll((__, list) -> List.copyOf(list));
+			result = Map.copyOf(map);
+			lookup = result;
+		}
+		return result;
 	}
 
 	/**
@@ -262,6 +909,7 @@ public final class Element {
 	 * @throws ElementException if this element does not have a child
 	 */
 	public Element child() {
+		load();
 		if(children.isEmpty()) throw exception("Expected child element");
 		return children.get(0);
 	}
@@ -272,7 +920,24 @@ public final class Element {
 	 * @return Child element
 	 */
 	public Optional<Element> optional(String name) {
-		return children(name).findAny();
+		load();
+		if(children.size() < INDEX_THRESHOLD) {
+			for(Element e : children) {
+				if(e.name.equals(name)) {
+					return Optional.of(e);
+				}
+			}
+			return Optional.empty();
+		}
+		else {
+			final List<Element> list = named(name);
+			if(list.isEmpty()) {
+				return Optional.empty();
+			}
+			else {
+				return Optional.of(list.get(0));
+			}
+		}
 	}
 
 	/**
@@ -281,35 +946,60 @@ public final class Element {
 	 * @return Index of this element
 	 */
 	public int index() {
-		// Skip if no siblings
-		if(parent == null) {
-			return 1;
-		}
-
-		// Determine sibling index
-		int index = 1;
-		for(final Element sibling : parent.children) {
-			if(sibling == this) {
-				return index;
-			}
-			if(sibling.name.equals(this.name)) {
-				++index;
-			}
-		}
-		throw new RuntimeException();
+		return index;
 	}
 
 	/**
 	 * @return Path from this element to the root
 	 */
 	public List<Element> path() {
-		final List<Element> path = Stream
-				.iterate(this, Objects::nonNull, e -> e.parent)
-				.collect(toCollection(LinkedList::new));
+		int depth = 0;
+		for(Element e = this; e != null; e = e.parent) {
+			++depth;
+		}
 
-		Collections.reverse(path);
+		final Element[] path = new Element[depth];
+		for(Element e = this; e != null; e = e.parent) {
+			path[--depth] = e;
+		}
 
-		return path;
+		return Arrays.asList(path);
+	}
+
+	/**
+	 * The <i>location</i> of this element is an XPath-like string denoting the path from the root element, decorated with the sibling index where applicable, e.g. {@code /root/parent/child[2]}.
+	 * <p>
+	 * The location is computed on demand and cached for this element and its ancestors.
+	 * The cached location is discarded if the element is subsequently attached to a parent.
+	 * <p>
+	 * @return Location of this element
+	 * @see #index()
+	 */
+	public String location() {
+		if(location == null) {
+			// Find ancestors that have not been cached
+			final Deque<Element> stack = new ArrayDeque<>();
+			Element e = this;
+			while((e != null) && (e.location == null)) {
+				stack.push(e);
+				e = e.parent;
+			}
+
+			// Build locations from the nearest cached ancestor
+			final StringBuilder str = new StringBuilder();
+			if(e != null) {
+				str.append(e.location);
+			}
+			while(!stack.isEmpty()) {
+				final Element next = stack.pop();
+				str.append('/').append(next.name);
+				if(next.index > 1) {
+					str.append('[').append(next.index).append(']');
+				}
+				next.location = str.toString();
+			}
+		}
+		return location;
 	}
 
 	/**
@@ -333,7 +1023,10 @@ public final class Element {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(name, attributes, text, children, parent);
+		if(source != null) {
+			hash(this);
+		}
+		return hash;
 	}
 
 	@Override
@@ -341,11 +1034,48 @@ public final class Element {
 		return
 				(obj == this) ||
 				(obj instanceof Element that) &&
-				this.name.equals(that.name) &&
-//				(this.parent == that.parent) &&
-				Objects.equals(this.text, that.text) &&
-				this.attributes.equals(that.attributes) &&
-				this.children.equals(that.children);
+				(this.hashCode() == that.hashCode()) &&
+				equals(this, that);
+	}
+
+	/**
+	 * Iteratively compares two element trees, ignoring the parent of the given elements.
+	 * @return Whether the given trees are structurally equal
+	 */
+	private static boolean equals(Element left, Element right) {
+		final Deque<Element> stack = new ArrayDeque<>();
+		stack.push(right);
+		stack.push(left);
+
+		while(!stack.isEmpty()) {
+			final Element a = stack.pop();
+			final Element b = stack.pop();
+
+			// Skip identical sub-trees
+			if(a == b) {
+				continue;
+			}
+
+			// Compare properties
+			final boolean equal =
+					(a.hashCode() == b.hashCode()) &&
+					a.name.equals(b.name) &&
+					Objects.equals(a.text, b.text) &&
+					a.attributes.equals(b.attributes) &&
+					(a.children.size() == b.children.size());
+
+			if(!equal) {
+				return false;
+			}
+
+			// Compare children
+			for(int n = 0; n < a.children.size(); ++n) {
+				stack.push(b.children.get(n));
+				stack.push(a.children.get(n));
+			}
+		}
+
+		return true;
 	}
 
 	@Override
@@ -357,17 +1087,22 @@ public final class Element {
 	 * An <i>element exception</i> indicates a processing exception thrown by the application.
 	 * <p>
 	 * The exception message is decorated with an XPath-like string representing the location of this element within the document.
+	 * The message is only formatted when first requested.
 	 * <p>
-	 * @see Element#index()
+	 * @see Element#location()
+	 * @see Element#stackTraces(boolean)
 	 */
 	public class ElementException extends RuntimeException {
+		private final Supplier<String> supplier;
+		private String message;
+
 		/**
 		 * Constructor.
 		 * @param message 		Exception message
 		 * @param cause			Optional cause
 		 */
 		public ElementException(String message, Throwable cause) {
-			super(message, cause);
+			this(message, cause, null);
 		}
 
 		/**
@@ -375,7 +1110,7 @@ public final class Element {
 		 * @param message Exception message
 		 */
 		public ElementException(String message) {
-			super(message);
+			this(message, null);
 		}
 
 		/**
@@ -383,30 +1118,35 @@ public final class Element {
 		 * @param cause Cause
 		 */
 		public ElementException(Throwable cause) {
-			super(cause);
+			this(Objects.toString(cause, null), cause);
 		}
 
-		@Override
-		public String getMessage() {
-			final String path = path()
-					.stream()
-					.map(this::name)
-					.collect(joining("/"));
+		/**
+		 * Constructor for a lazily generated message.
+		 * @param supplier Exception message supplier
+		 */
+		private ElementException(Supplier<String> supplier) {
+			this(null, null, supplier);
+		}
 
-			return String.format("%s at /%s", super.getMessage(), path);
+		private ElementException(String message, Throwable cause, Supplier<String> supplier) {
+			super(message, cause, true, stackTraces);
+			this.supplier = supplier;
 		}
 
-		/**
-		 * @return Name of the given element decorated with the sibling index
-		 */
-		private String name(Element e) {
-			final int index = e.index();
-			if(index == 1) {
-				return e.name;
-			}
-			else {
-				return String.format("%s[%d]", e.name, index);
+		@Override
+		public String getMessage() {
+			if(message == null) {
+				final String str;
+				if(supplier == null) {
+					str = super.getMessage();
+				}
+				else {
+					str = supplier.get();
+				}
+				message = String.format("%s at %s", str, location());
 			}
+			return message;
 		}
 	}
 
@@ -414,6 +1154,8 @@ public final class Element {
 	 * Builder for an element.
 	 */
 	public static class Builder {
+		private final SymbolTable symbols;
+
 		// Element properties
 		private String name;
 		private final Map<String, String> attributes = new HashMap<>();
@@ -423,12 +1165,27 @@ public final class Element {
 		private final List<Element> children = new ArrayList<>();
 		private Builder parent;
 
+		/**
+		 * Constructor.
+		 * @param symbols Symbol table used to canonicalise element and attribute names
+		 */
+		public Builder(SymbolTable symbols) {
+			this.symbols = notNull(symbols);
+		}
+
+		/**
+		 * Default constructor.
+		 */
+		public Builder() {
+			this(SymbolTable.NONE);
+		}
+
 		/**
 		 * Sets the name of this element.
 		 * @param name Element name
 		 */
 		public Builder name(String name) {
-			this.name = notEmpty(name);
+			this.name = symbols.intern(notEmpty(name));
 			return this;
 		}
 
@@ -439,7 +1196,7 @@ public final class Element {
 		 */
 		public Builder attribute(String name, Object value) {
 			Check.notEmpty(name);
-			attributes.put(name, value.toString());
+			attributes.put(symbols.intern(name), value.toString());
 			return this;
 		}
 
@@ -457,7 +1214,7 @@ public final class Element {
 		 * @return New child element builder
 		 */
 		public Builder child() {
-			final Builder child = new Builder();
+			final Builder child = new Builder(symbols);
 			child.parent = this;
 			return child;
 		}
@@ -477,7 +1234,7 @@ public final class Element {
 		 * @param text		Text content
 		 */
 		public Builder child(String name, String text) {
-			final Element child = new Builder().name(name).text(text).build();
+			final Element child = new Builder(symbols).name(name).text(text).build();
 			return child(child);
 		}
 
@@ -541,9 +1298,7 @@ public final class Element {
 			final Element element = new Element(name, attributes, text);
 
 			// Attach children
-			for(final Element e : children) {
-				e.parent(element);
-			}
+			element.attach(children);
 
 			return element;
 		}
@@ -0,0 +1,353 @@
+package org.sarge.lib.element;
+
+import static org.sarge.lib.util.Check.notNull;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+
+import org.sarge.lib.element.Element.ElementException;
+import org.sarge.lib.util.Converter;
+
+/**
+ * An <i>element binder</i> constructs a record from an element.
+ * <p>
+ * The record is inspected once when the binder is created and each component is bound to the element by name as follows:
+ * <ul>
+ * <li>a <i>scalar</i> component (see below) is converted from the attribute with the same name, or otherwise the text content of the child element with that name</li>
+ * <li>a nested record is bound to the child element with the same name</li>
+ * <li>a {@link List} of scalars or records is bound to all the child elements with the same name (and can therefore be empty)</li>
+ * </ul>
+ * <p>
+ * Scalar components are converted using a {@link Converter}, the following types are supported by default:
+ * primitives and their wrappers, {@link String}, enumerations (see {@link Converter#of(Class)}) and {@link Duration}.
+ * Additional converters can be specified using {@link #of(Class, Map)}.
+ * <p>
+ * The component bindings and the canonical constructor of the record are composed into a single {@link MethodHandle}, i.e. binding an element does not require any reflection or intermediate argument array.
+ * A binder is immutable and is a loader that can be registered with a {@link LoaderRegistry}.
+ * <p>
+ * Example:
+ * <pre>
+ * record Point(float x, float y) {
+ * }
+ *
+ * record Shape(String name, Colour colour, List&lt;Point&gt; point) {
+ * }
+ *
+ * // Bind a shape
+ * ElementBinder&lt;Shape&gt; binder = ElementBinder.of(Shape.class);
+ * Element e = ...
+ * Shape shape = binder.apply(e);
+ * </pre>
+ * where the document is:
+ * <pre>
+ * &lt;shape name="triangle"&gt;
+ *     &lt;colour&gt;red&lt;/colour&gt;
+ *     &lt;point x="0" y="0" /&gt;
+ *     &lt;point x="1" y="0" /&gt;
+ *     &lt;point x="0" y="1" /&gt;
+ * &lt;/shape&gt;
+ * </pre>
+ * <p>
+ * @param <T> Record type
+ * @author Sarge
+ */
+public final class ElementBinder<T extends Record> implements Function<Element, T> {
+	/**
+	 * Default converters.
+	 */
+	private static final Map<Class<?>, Converter<?>> DEFAULTS = defaults();
+
+	/**
+	 * @return Default converters indexed by type
+	 */
+	private static Map<Class<?>, Converter<?>> defaults() {
+		final Map<Class<?>, Converter<?>> map = new HashMap<>();
+		map.put(String.class, str -> str);
+		map.put(int.class, Integer::valueOf);
+		map.put(Integer.class, Integer::valueOf);
+		map.put(long.class, Long::valueOf);
+		map.put(Long.class, Long::valueOf);
+		map.put(float.class, Float::valueOf);
+		map.put(Float.class, Float::valueOf);
+		map.put(double.class, Double::valueOf);
+		map.put(Double.class, Double::valueOf);
+		map.put(short.class, Short::valueOf);
+		map.put(Short.class, Short::valueOf);
+		map.put(byte.class, Byte::valueOf);
+		map.put(Byte.class, Byte::valueOf);
+		map.put(boolean.class, Converter.BOOLEAN);
+		map.put(Boolean.class, Converter.BOOLEAN);
+		map.put(char.class, ElementBinder::character);
+		map.put(Character.class, ElementBinder::character);
+		map.put(Duration.class, Converter.DURATION);
+		return Map.copyOf(map);
+	}
+
+	/**
+	 * Binding of a record component.
+	 */
+	@FunctionalInterface
+	private interface Binding {
+		/**
+		 * Binds a component.
+		 * @param e Element
+		 * @return Component value
+		 * @throws ElementException if the component cannot be bound
+		 */
+		Object bind(Element e);
+	}
+
+	/**
+	 * Creates a binder for the given record.
+	 * @param <T> Record type
+	 * @param type Record class
+	 * @return Binder
+	 * @throws IllegalArgumentException if a record component is not supported
+	 */
+	public static <T extends Record> ElementBinder<T> of(Class<T> type) {
+		return of(type, Map.of());
+	}
+
+	/**
+	 * Creates a binder for the given record with additional converters.
+	 * @param <T> Record type
+	 * @param type				Record class
+	 * @param converters		Additional converters indexed by type
+	 * @return Binder
+	 * @throws IllegalArgumentException if a record component is not supported
+	 */
+	public static <T extends Record> ElementBinder<T> of(Class<T> type, Map<Class<?>, Converter<?>> converters) {
+		final Map<Class<?>, Converter<?>> map = new HashMap<>(DEFAULTS);
+		map.putAll(notNull(converters));
+		return new ElementBinder<>(notNull(type), map, new HashMap<>());
+	}
+
+	private final Class<T> type;
+	private final MethodHandle ctor;
+	private final String[] names;
+
+	/**
+	 * Constructor.
+	 * @param type				Record class
+	 * @param converters		Converters indexed by type
+	 * @param binders			Binders for nested records that have already been created
+	 */
+	private ElementBinder(Class<T> type, Map<Class<?>, Converter<?>> converters, Map<Class<?>, ElementBinder<?>> binders) {
+		if(!type.isRecord()) throw new IllegalArgumentException("Not a record: " + type);
+		this.type = type;
+		binders.put(type, this);
+
+		// Bind components
+		final RecordComponent[] components = type.getRecordComponents();
+		final Class<?>[] signature = new Class<?>[components.length];
+		final Binding[] bindings = new Binding[components.length];
+		this.names = new String[components.length];
+		for(int n = 0; n < components.length; ++n) {
+			final RecordComponent component = components[n];
+			signature[n] = component.getType();
+			names[n] = component.getName();
+			bindings[n] = binding(component, converters, binders);
+		}
+
+		// Compose constructor
+		this.ctor = constructor(type, signature, bindings);
+	}
+
+	/**
+	 * @return Record type
+	 */
+	public Class<T> type() {
+		return type;
+	}
+
+	/**
+	 * Composes a method handle that binds an element to a new record instance.
+	 * <p>
+	 * The canonical constructor of the record is adapted such that each argument is filtered through the binding of the corresponding component, and all the arguments are then collapsed to the single element.
+	 * The resultant handle has the signature {@code (Element) -> Object} and does not require an intermediate argument array or any reflection.
+	 * <p>
+	 * @param type				Record class
+	 * @param signature			Component types
+	 * @param bindings			Component bindings
+	 * @return Binder handle
+	 * @throws IllegalArgumentException if the constructor cannot be accessed
+	 */
+	private static MethodHandle constructor(Class<?> type, Class<?>[] signature, Binding[] bindings) {
+		final MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			// Lookup canonical constructor
+			final Constructor<?> ctor = type.getDeclaredConstructor(signature);
+			ctor.trySetAccessible();
+			final MethodHandle handle = lookup.unreflectConstructor(ctor);
+
+			// Filter each argument through the component binding
+			final MethodHandle bind = lookup.findVirtual(Binding.class, "bind", MethodType.methodType(Object.class, Element.class));
+			final MethodHandle[] filters = new MethodHandle[bindings.length];
+			for(int n = 0; n < bindings.length; ++n) {
+				filters[n] = bind.bindTo(bindings[n]).asType(MethodType.methodType(signature[n], Element.class));
+			}
+			final MethodHandle filtered = MethodHandles.filterArguments(handle, 0, filters);
+
+			// Collapse arguments to the element
+			final MethodType result = MethodType.methodType(Object.class, Element.class);
+			return MethodHandles.permuteArguments(filtered.asType(filtered.type().changeReturnType(Object.class)), result, new int[signature.length]);
+		}
+		catch(NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot access canonical constructor: " + type, e);
+		}
+	}
+
+	/**
+	 * Creates the binding for a record component.
+	 * @param component			Record component
+	 * @param converters		Converters
+	 * @param binders			Nested binders
+	 * @return Binding
+	 * @throws IllegalArgumentException if the component is not supported
+	 */
+	private static Binding binding(RecordComponent component, Map<Class<?>, Converter<?>> converters, Map<Class<?>, ElementBinder<?>> binders) {
+		final String name = component.getName();
+		final Class<?> type = component.getType();
+
+		// Bind list of child elements
+		if(type == List.class) {
+			final Function<Element, Object> mapper = mapper(element(component), converters, binders, name);
+			return e -> {
+				final List<Element> children = e.named(name);
+				final Object[] array = new Object[children.size()];
+				for(int n = 0; n < array.length; ++n) {
+					array[n] = mapper.apply(children.get(n));
+				}
+				return List.of(array);
+			};
+		}
+
+		// Bind nested record
+		if(type.isRecord()) {
+			final ElementBinder<?> binder = binder(type, converters, binders);
+			return e -> binder.apply(e.child(name));
+		}
+
+		// Otherwise bind scalar attribute or child text
+		final Converter<?> converter = converter(type, converters, name);
+		return e -> {
+			String value = e.attributes().get(name);
+			if(value == null) {
+				final List<Element> children = e.named(name);
+				if(children.isEmpty()) throw e.exception("Expected attribute or child element: " + name);
+				value = children.get(0).text().toString();
+			}
+			return convert(converter, value, e);
+		};
+	}
+
+	/**
+	 * @return Element type of the given list component
+	 * @throws IllegalArgumentException if the element type cannot be determined
+	 */
+	private static Class<?> element(RecordComponent component) {
+		if(component.getGenericType() instanceof ParameterizedType param) {
+			if(param.getActualTypeArguments()[0] instanceof Class<?> arg) {
+				return arg;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported list component: " + component);
+	}
+
+	/**
+	 * Creates a mapper for the child elements of a list component.
+	 * @param type				Element type
+	 * @param converters		Converters
+	 * @param binders			Nested binders
+	 * @param name				Component name
+	 * @return Child element mapper
+	 */
+	private static Function<Element, Object> mapper(Class<?> type, Map<Class<?>, Converter<?>> converters, Map<Class<?>, ElementBinder<?>> binders, String name) {
+		if(type.isRecord()) {
+			final ElementBinder<?> binder = binder(type, converters, binders);
+			return binder::apply;
+		}
+		else {
+			final Converter<?> converter = converter(type, converters, name);
+			return child -> convert(converter, child.text().toString(), child);
+		}
+	}
+
+	/**
+	 * Looks up or creates the binder for a nested record, supporting recursive records.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static ElementBinder<?> binder(Class<?> type, Map<Class<?>, Converter<?>> converters, Map<Class<?>, ElementBinder<?>> binders) {
+		final ElementBinder<?> binder = binders.get(type);
+		if(binder == null) {
+			return new ElementBinder(type, converters, binders);
+		}
+		else {
+			return binder;
+		}
+	}
+
+	/**
+	 * Looks up the converter for the given type.
+	 * @throws IllegalArgumentException if the type is not supported
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Converter<?> converter(Class<?> type, Map<Class<?>, Converter<?>> converters, String name) {
+		final Converter<?> converter = converters.get(type);
+		if(converter != null) {
+			return converter;
+		}
+		if(type.isEnum()) {
+			return Converter.of((Class<Enum>) type);
+		}
+		throw new IllegalArgumentException(String.format("Unsupported component type: %s %s", type.getName(), name));
+	}
+
+	/**
+	 * Converts a component value.
+	 * @throws ElementException if the value cannot be converted
+	 */
+	private static Object convert(Converter<?> converter, String value, Element e) {
+		try {
+			return converter.apply(value);
+		}
+		catch(IllegalArgumentException ex) {
+			throw e.exception(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Converts a single character.
+	 */
+	private static Character character(String str) {
+		if(str.length() != 1) throw new NumberFormatException("Invalid character: " + str);
+		return str.charAt(0);
+	}
+
+	/**
+	 * Binds the given element to a new record instance.
+	 * @param e Element
+	 * @return Record
+	 * @throws ElementException if a component cannot be bound or the record cannot be constructed
+	 */
+	@Override
+	public T apply(Element e) {
+		try {
+			return type.cast((Object) ctor.invokeExact(e));
+		}
+		catch(ElementException | Error ex) {
+			throw ex;
+		}
+		catch(Throwable ex) {
+			throw e.new ElementException(ex);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ElementBinder[%s%s]", type.getSimpleName(), Arrays.toString(names));
+	}
+}
@@ -0,0 +1,285 @@
+package org.sarge.lib.element;
+
+import static org.sarge.lib.util.Check.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An <i>element cache</i> is a loader that caches parsed documents by file.
+ * <p>
+ * A cached document is shared by all callers and is returned while the modification time and size of the file are unchanged.
+ * The directories containing cached documents are monitored by a {@link WatchService} which evicts entries as soon as the underlying file is modified or deleted.
+ * <p>
+ * The cache is bounded by the total size of the cached files, used as a proxy for the memory retained by the loaded trees.
+ * The least recently used entries are evicted when the bound is exceeded.
+ * <p>
+ * Usage:
+ * <pre>
+ * try(ElementCache cache = new ElementCache(new ElementLoader(), 64 &lt;&lt; 20)) {
+ *     Element root = cache.load(path);
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * @author Sarge
+ */
+public class ElementCache implements AutoCloseable {
+	/**
+	 * Cache entry.
+	 */
+	private record Entry(FileTime modified, long size, Element root) {
+	}
+
+	private final ElementLoader loader;
+	private final long max;
+	private final Map<Path, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private final WatchService watcher;
+	private final Map<Path, WatchKey> dirs = new ConcurrentHashMap<>();
+	private final Map<Path, FutureTask<Element>> pending = new ConcurrentHashMap<>();
+	private final Thread thread;
+	private long total;
+
+	/**
+	 * Constructor.
+	 * @param loader		Delegate loader
+	 * @param max			Maximum total size of the cached files (bytes)
+	 * @throws IOException if the file watcher cannot be created
+	 */
+	public ElementCache(ElementLoader loader, long max) throws IOException {
+		this.loader = notNull(loader);
+		this.max = oneOrMore(max);
+		this.watcher = FileSystems.getDefault().newWatchService();
+		this.thread = new Thread(this::watch, "ElementCache");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Loads a document from the given file or returns the cached element.
+	 * <p>
+	 * Concurrent callers that miss the cache for the same file share a single load, i.e. all callers are returned the same instance.
+	 * <p>
+	 * @param path File path
+	 * @return Root element
+	 * @throws IOException if the document cannot be loaded
+	 */
+	public Element load(Path path) throws IOException {
+		// Lookup cached document
+		final Path key = path.toAbsolutePath().normalize();
+		final BasicFileAttributes attrs = Files.readAttributes(key, BasicFileAttributes.class);
+		final Element cached = cached(key, attrs);
+		if(cached != null) {
+			return cached;
+		}
+
+		// Otherwise load the document or wait for a pending load of the same file
+		final FutureTask<Element> task = new FutureTask<>(() -> load(key, attrs));
+		final FutureTask<Element> pending = this.pending.putIfAbsent(key, task);
+		if(pending == null) {
+			try {
+				task.run();
+			}
+			finally {
+				this.pending.remove(key, task);
+			}
+			return result(task);
+		}
+		else {
+			return result(pending);
+		}
+	}
+
+	/**
+	 * Looks up a cached document.
+	 * @param key			File path
+	 * @param attrs			File attributes
+	 * @return Cached document or {@code null} if not present or stale
+	 */
+	private Element cached(Path key, BasicFileAttributes attrs) {
+		synchronized(cache) {
+			final Entry entry = cache.get(key);
+			if((entry != null) && entry.modified.equals(attrs.lastModifiedTime()) && (entry.size == attrs.size())) {
+				return entry.root;
+			}
+			else {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Loads and caches a document.
+	 * @param key			File path
+	 * @param attrs			File attributes
+	 * @return Root element
+	 * @throws IOException if the document cannot be loaded
+	 */
+	private Element load(Path key, BasicFileAttributes attrs) throws IOException {
+		// Check whether the document was cached by a load that completed in the meantime
+		final Element cached = cached(key, attrs);
+		if(cached != null) {
+			return cached;
+		}
+
+		// Load document
+		final Element root = loader.load(key);
+		watch(key.getParent());
+
+		// Add to cache
+		final Entry entry = new Entry(attrs.lastModifiedTime(), attrs.size(), root);
+		synchronized(cache) {
+			remove(key);
+			if(entry.size <= max) {
+				cache.put(key, entry);
+				total += entry.size;
+				trim();
+			}
+		}
+
+		return root;
+	}
+
+	/**
+	 * Retrieves the result of a load.
+	 * @param task Load task
+	 * @return Root element
+	 * @throws IOException if the document cannot be loaded or the calling thread was interrupted
+	 */
+	private static Element result(FutureTask<Element> task) throws IOException {
+		try {
+			return task.get();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for document");
+		}
+		catch(ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if(cause instanceof IOException ex) {
+				throw ex;
+			}
+			if(cause instanceof RuntimeException ex) {
+				throw ex;
+			}
+			if(cause instanceof Error ex) {
+				throw ex;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entries until the cache is within its bound.
+	 */
+	private void trim() {
+		final Iterator<Entry> itr = cache.values().iterator();
+		while(total > max) {
+			total -= itr.next().size;
+			itr.remove();
+		}
+	}
+
+	/**
+	 * Removes a cache entry.
+	 */
+	private void remove(Path key) {
+		final Entry prev = cache.remove(key);
+		if(prev != null) {
+			total -= prev.size;
+		}
+	}
+
+	/**
+	 * @return Number of cached documents
+	 */
+	public int size() {
+		synchronized(cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Evicts the cached document for the given file.
+	 * @param path File path
+	 */
+	public void invalidate(Path path) {
+		final Path key = path.toAbsolutePath().normalize();
+		synchronized(cache) {
+			remove(key);
+		}
+	}
+
+	/**
+	 * Evicts all cached documents.
+	 */
+	public void clear() {
+		synchronized(cache) {
+			cache.clear();
+			total = 0;
+		}
+	}
+
+	/**
+	 * Registers a directory with the file watcher.
+	 */
+	private void watch(Path dir) throws IOException {
+		if(dirs.containsKey(dir)) {
+			return;
+		}
+		final WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_CREATE);
+		dirs.put(dir, key);
+	}
+
+	/**
+	 * Evicts cached documents when the underlying files are changed.
+	 */
+	private void watch() {
+		try {
+			while(true) {
+				final WatchKey key = watcher.take();
+				final Path dir = (Path) key.watchable();
+				for(WatchEvent<?> event : key.pollEvents()) {
+					evict(dir, event);
+				}
+				if(!key.reset()) {
+					dirs.remove(dir);
+				}
+			}
+		}
+		catch(InterruptedException | ClosedWatchServiceException e) {
+			// Cache closed
+		}
+	}
+
+	/**
+	 * Evicts cached documents for a file watcher event.
+	 * @param dir			Watched directory
+	 * @param event			Event
+	 */
+	void evict(Path dir, WatchEvent<?> event) {
+		if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+			// Evict all documents in this directory
+			synchronized(cache) {
+				cache.keySet().stream().filter(p -> dir.equals(p.getParent())).toList().forEach(this::remove);
+			}
+		}
+		else {
+			// Evict the modified document
+			invalidate(dir.resolve((Path) event.context()));
+		}
+	}
+
+	/**
+	 * Stops the file watcher and evicts all cached documents.
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+		thread.interrupt();
+		clear();
+	}
+}
@@ -0,0 +1,221 @@
+package org.sarge.lib.element;
+
+import static org.sarge.lib.util.Check.notNull;
+
+import java.util.*;
+
+/**
+ * An <i>element diff</i> compares two versions of an element tree and reports the sub-trees that have been added, removed or changed.
+ * <p>
+ * Sub-trees with matching structural hashes are compared for equality and skipped, see {@link Element#hashCode()}.
+ * Otherwise an element is reported as {@link Type#CHANGED} if its name, attributes or text content differ, in which case the sub-tree is treated as a single change.
+ * The children of an element whose own properties are unchanged are matched by name and sibling index (see {@link Element#index()}) and compared in turn.
+ * <p>
+ * Note that because children are matched by sibling index, inserting or removing an element also changes the following siblings with the same name.
+ * <p>
+ * Example:
+ * <pre>
+ * for(Change change : ElementDiff.compare(before, after)) {
+ *     System.out.println(change.type() + " " + change.location());
+ * }
+ * </pre>
+ * <p>
+ * @author Sarge
+ */
+public final class ElementDiff {
+	/**
+	 * Type of change.
+	 */
+	public enum Type {
+		ADDED,
+		REMOVED,
+		CHANGED
+	}
+
+	/**
+	 * A <i>change</i> describes a sub-tree that differs between the two versions of a tree.
+	 * @param type			Type of change
+	 * @param before		Original element or {@code null} if added
+	 * @param after			Updated element or {@code null} if removed
+	 */
+	public record Change(Type type, Element before, Element after) {
+		/**
+		 * Constructor.
+		 * @param type			Type of change
+		 * @param before		Original element or {@code null} if added
+		 * @param after			Updated element or {@code null} if removed
+		 */
+		public Change {
+			notNull(type);
+			if((before == null) && (after == null)) throw new IllegalArgumentException("Change must specify an element");
+		}
+
+		/**
+		 * @return Changed element, i.e. the updated element or the original element if removed
+		 */
+		public Element element() {
+			if(after == null) {
+				return before;
+			}
+			else {
+				return after;
+			}
+		}
+
+		/**
+		 * @return Location of the changed element
+		 * @see Element#location()
+		 */
+		public String location() {
+			return element().location();
+		}
+	}
+
+	/**
+	 * Pending comparison or unmatched element.
+	 */
+	private record Pair(Element before, Element after) {
+	}
+
+	private ElementDiff() {
+	}
+
+	/**
+	 * Compares two versions of an element tree.
+	 * @param before		Original tree
+	 * @param after			Updated tree
+	 * @return Changes in document order
+	 */
+	public static List<Change> compare(Element before, Element after) {
+		final List<Change> changes = new ArrayList<>();
+		final Deque<Pair> stack = new ArrayDeque<>();
+		stack.push(new Pair(notNull(before), notNull(after)));
+
+		while(!stack.isEmpty()) {
+			final Pair pair = stack.pop();
+			final Element a = pair.before;
+			final Element b = pair.after;
+
+			// Record unmatched elements
+			if(a == null) {
+				changes.add(new Change(Type.ADDED, null, b));
+				continue;
+			}
+			if(b == null) {
+				changes.add(new Change(Type.REMOVED, a, null));
+				continue;
+			}
+
+			// Skip identical sub-trees
+			if(a.equals(b)) {
+				continue;
+			}
+
+			// Record changed element
+			if(!isEqual(a, b)) {
+				changes.add(new Change(Type.CHANGED, a, b));
+				continue;
+			}
+
+			// Otherwise compare children
+			final List<Pair> children = match(a, b);
+			for(int n = children.size() - 1; n >= 0; --n) {
+				stack.push(children.get(n));
+			}
+		}
+
+		return changes;
+	}
+
+	/**
+	 * @return Whether the properties of the given elements are equal, ignoring the children
+	 */
+	private static boolean isEqual(Element a, Element b) {
+		return
+				a.name().equals(b.name()) &&
+				a.attributes().equals(b.attributes()) &&
+				Objects.equals(text(a), text(b));
+	}
+
+	/**
+	 * @return Text content or {@code null} if none
+	 */
+	private static String text(Element e) {
+		final Element.Content text = e.text();
+		if(text.isPresent()) {
+			return text.toString();
+		}
+		else {
+			return null;
+		}
+	}
+
+	/**
+	 * Matches the children of two elements by name and sibling index.
+	 * Unmatched children of the updated element are interleaved at their position, i.e. before the next matched child.
+	 * @return Matched and added children in document order
+	 */
+	private static List<Pair> match(Element a, Element b) {
+		final List<Pair> pairs = new ArrayList<>();
+		final List<Element> right = b.childList();
+
+		// Index updated children
+		final Map<Element, Integer> positions = new IdentityHashMap<>();
+		for(int n = 0; n < right.size(); ++n) {
+			positions.put(right.get(n), n);
+		}
+
+		// Match original children
+		int next = 0;
+		for(Element child : a.childList()) {
+			final Element match = counterpart(child, b);
+			if(match != null) {
+				final int pos = positions.get(match);
+				if(pos >= next) {
+					added(right, next, pos, a, pairs);
+					next = pos + 1;
+				}
+			}
+			pairs.add(new Pair(child, match));
+		}
+
+		// Add remaining unmatched children
+		added(right, next, right.size(), a, pairs);
+
+		return pairs;
+	}
+
+	/**
+	 * Adds the unmatched children in the given range.
+	 * @param children		Children of the updated element
+	 * @param from			Start index
+	 * @param to			End index (exclusive)
+	 * @param a				Original element
+	 * @param pairs			Pairs
+	 */
+	private static void added(List<Element> children, int from, int to, Element a, List<Pair> pairs) {
+		for(int n = from; n < to; ++n) {
+			final Element child = children.get(n);
+			if(counterpart(child, a) == null) {
+				pairs.add(new Pair(null, child));
+			}
+		}
+	}
+
+	/**
+	 * Finds the child of the given parent with the same name and sibling index as the given element.
+	 * @param e				Element
+	 * @param parent		Parent to search
+	 * @return Matching child or {@code null} if none
+	 */
+	static Element counterpart(Element e, Element parent) {
+		final List<Element> siblings = parent.named(e.name());
+		final int index = e.index();
+		if(index > siblings.size()) {
+			return null;
+		}
+		else {
+			return siblings.get(index - 1);
+		}
+	}
+}
@@ -1,33 +1,77 @@
 package org.sarge.lib.element;
 
+import static org.sarge.lib.util.Check.notNull;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.*;
+import java.util.*;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.*;
 
-import javax.xml.parsers.*;
+import javax.xml.stream.*;
 
-import org.sarge.lib.element.Element.Builder;
-import org.w3c.dom.*;
-import org.xml.sax.*;
+import org.sarge.lib.util.*;
 
 /**
  * Element loader for an XML document.
+ * <p>
+ * This implementation uses a <i>pull parser</i> to build the element tree directly from the XML parse events, i.e. the document is never materialised as an intermediate DOM.
+ * The tree is constructed iteratively using the builder for each open element as an implicit stack, therefore very deep documents cannot overflow the call stack.
+ * <p>
+ * Element and attribute names are canonicalised by a {@link SymbolTable} which by default is shared by all loaders.
+ * <p>
+ * Documents that are too large to be materialised can be processed as a stream of <i>records</i> using {@link #stream(Reader, String)}.
+ * <p>
+ * A loader is thread-safe and can load a batch of documents in parallel using {@link #loadAll(Collection, int)} or {@link #loadDirectory(Path, String)}.
+ * <p>
  * @author Sarge
  */
 public class ElementLoader {
-	private static final DocumentBuilderFactory FACTORY = DocumentBuilderFactory.newInstance();
+	private static final XMLInputFactory FACTORY = factory();
 
 	/**
-	 * @throws RuntimeException if the underlying XML parser cannot be instantiated
+	 * @return XML parser factory
 	 */
-	private static DocumentBuilder parser() {
-		try {
-			return FACTORY.newDocumentBuilder();
-		}
-		catch(Exception e) {
-			throw new RuntimeException("Error creating XML document parser", e);
-		}
+	private static XMLInputFactory factory() {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		return factory;
 	}
 
-	private final DocumentBuilder parser = parser();
+	/**
+	 * Minimum size of a file that is memory-mapped.
+	 */
+	public static final int MAP_THRESHOLD = 1 << 20;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Default symbol table shared by all loaders.
+	 */
+	static final SymbolTable SYMBOLS = SymbolTable.of(8192);
+
+	private final SymbolTable symbols;
+
+	/**
+	 * Constructor.
+	 * @param symbols Symbol table for element and attribute names
+	 */
+	public ElementLoader(SymbolTable symbols) {
+		this.symbols = notNull(symbols);
+	}
+
+	/**
+	 * Constructor using the default shared symbol table.
+	 */
+	public ElementLoader() {
+		this(SYMBOLS);
+	}
 
 	/**
 	 * Loads an XML document.
@@ -36,61 +80,551 @@ public class ElementLoader {
 	 * @throws IOException if the XML cannot be loaded
 	 */
 	public Element load(Reader r) throws IOException {
-		// Load document
-		final Document doc;
 		try {
-			doc = parser.parse(new InputSource(r));
+			return parse(FACTORY.createXMLStreamReader(r));
 		}
-		catch(SAXException e) {
+		catch(XMLStreamException e) {
 			throw new IOException("Error parsing XML document", e);
 		}
+	}
 
-		// Load tree
-		final Builder root = new Builder();
-		load(doc.getDocumentElement(), root);
+	/**
+	 * Loads an XML document from a byte stream.
+	 * The character encoding is determined by the parser from the XML prolog.
+	 * @param in XML input stream
+	 * @return Root element
+	 * @throws IOException if the XML cannot be loaded
+	 */
+	public Element load(InputStream in) throws IOException {
+		try {
+			return parse(FACTORY.createXMLStreamReader(in));
+		}
+		catch(XMLStreamException e) {
+			throw new IOException("Error parsing XML document", e);
+		}
+	}
 
-		// Construct root element
-		return root.build();
+	/**
+	 * Loads an XML document from the remaining contents of the given buffer.
+	 * The character encoding is determined by the parser from the XML prolog.
+	 * The position of the given buffer is unchanged.
+	 * @param buffer XML buffer
+	 * @return Root element
+	 * @throws IOException if the XML cannot be loaded
+	 */
+	public Element load(ByteBuffer buffer) throws IOException {
+		return load(new BufferInputStream(buffer.duplicate()));
 	}
 
 	/**
-	 * Recursively loads a tree of elements.
-	 * @param node			Node
-	 * @param builder		Builder
+	 * Loads an XML document from the given file.
+	 * <p>
+	 * The file is read via a {@link FileChannel} and files larger than {@link #MAP_THRESHOLD} are memory-mapped, avoiding the copy and system call overhead of a buffered reader.
+	 * Files too large to be mapped into a single buffer are read from the channel.
+	 * The character encoding is determined by the parser from the XML prolog.
+	 * <p>
+	 * @param path File path
+	 * @return Root element
+	 * @throws IOException if the XML cannot be loaded
 	 */
-	private void load(Node node, Builder builder) {
-		// Init element
-		builder.name(node.getNodeName());
+	public Element load(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if((size >= MAP_THRESHOLD) && (size <= Integer.MAX_VALUE)) {
+				return load(channel.map(MapMode.READ_ONLY, 0, size));
+			}
+			else {
+				return load(input(channel));
+			}
+		}
+	}
 
-		// Load attributes
-		final NamedNodeMap map = node.getAttributes();
-		final int len = map.getLength();
-		for(int n = 0; n < len; ++n) {
-			final Node attr = map.item(n);
-			builder.attribute(attr.getNodeName(), attr.getNodeValue());
+	/**
+	 * Lazily loads an XML document from the given file.
+	 * <p>
+	 * The file is memory-mapped and indexed, the attributes, text content and children of each element are only materialised when first accessed.
+	 * <p>
+	 * @param path File path
+	 * @return Deferred root element
+	 * @throws IOException if the file cannot be mapped or the document is not well-formed
+	 * @see #lazy(ByteBuffer)
+	 */
+	public Element lazy(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if(size > Integer.MAX_VALUE) throw new IOException("File is too large to be lazily loaded: " + path);
+			return lazy(channel.map(MapMode.READ_ONLY, 0, size));
 		}
+	}
 
-		// Load text content and child elements
-		final NodeList nodes = node.getChildNodes();
-		final int count = nodes.getLength();
-		for(int n = 0; n < count; ++n) {
-			final Node child = nodes.item(n);
-			switch(child.getNodeType()) {
-				case Node.ELEMENT_NODE -> {
-					// Recurse to child elements
-					final Builder sub = builder.child();
-					load(child, sub);
-					sub.end();
+	/**
+	 * Lazily loads an XML document from the remaining contents of the given buffer.
+	 * <p>
+	 * This method builds a lightweight index of the elements in the document, the returned root element is <i>deferred</i> such that each element is only materialised when first accessed.
+	 * This approach is intended for large documents where only a small number of sub-trees are actually used.
+	 * <p>
+	 * Notes:
+	 * <ul>
+	 * <li>the document must be encoded as UTF-8</li>
+	 * <li>only the predefined XML entities and character references are supported</li>
+	 * <li>the content of an element is validated when it is materialised, in which case an {@link UncheckedIOException} is thrown on first access</li>
+	 * <li>the buffer must not be modified while the document is in use</li>
+	 * </ul>
+	 * <p>
+	 * @param buffer XML buffer
+	 * @return Deferred root element
+	 * @throws IOException if the document is not well-formed
+	 */
+	public Element lazy(ByteBuffer buffer) throws IOException {
+		return new LazyDocument(buffer.slice(), symbols).root();
+	}
+
+	/**
+	 * Creates a buffered input stream for the given channel.
+	 */
+	private static InputStream input(FileChannel channel) {
+		return new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+	}
+
+	/**
+	 * Loads a document using the given parser.
+	 * @param parser XML parser
+	 * @return Root element
+	 * @throws XMLStreamException if the XML cannot be parsed
+	 */
+	private Element parse(XMLStreamReader parser) throws XMLStreamException {
+		try {
+			start(parser);
+			final Element root = load(parser);
+			end(parser);
+			return root;
+		}
+		finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Advances to the root element skipping the prolog, i.e. any DOCTYPE, comments, processing instructions and whitespace.
+	 * Note that {@link XMLStreamReader#nextTag()} cannot be used since it rejects a DTD event.
+	 * @param parser XML parser
+	 * @throws XMLStreamException if the document does not contain a root element
+	 */
+	private static void start(XMLStreamReader parser) throws XMLStreamException {
+		while(true) {
+			switch(parser.next()) {
+				case XMLStreamConstants.START_ELEMENT -> {
+					return;
+				}
+				case XMLStreamConstants.DTD, XMLStreamConstants.COMMENT, XMLStreamConstants.PROCESSING_INSTRUCTION, XMLStreamConstants.SPACE -> {
+					// Skip prolog
+				}
+				case XMLStreamConstants.CHARACTERS -> {
+					if(!parser.isWhiteSpace()) throw new XMLStreamException("Expected root element", parser.getLocation());
 				}
+				default -> throw new XMLStreamException("Expected root element", parser.getLocation());
+			}
+		}
+	}
+
+	/**
+	 * Advances to the end of the document after the root element, allowing only comments, processing instructions and whitespace.
+	 * @param parser XML parser
+	 * @throws XMLStreamException if the document contains content after the root element
+	 */
+	private static void end(XMLStreamReader parser) throws XMLStreamException {
+		while(true) {
+			switch(parser.next()) {
+				case XMLStreamConstants.END_DOCUMENT -> {
+					return;
+				}
+				case XMLStreamConstants.COMMENT, XMLStreamConstants.PROCESSING_INSTRUCTION, XMLStreamConstants.SPACE -> {
+					// Skip epilog
+				}
+				case XMLStreamConstants.CHARACTERS -> {
+					if(!parser.isWhiteSpace()) throw new XMLStreamException("Unexpected content after root element", parser.getLocation());
+				}
+				default -> throw new XMLStreamException("Unexpected content after root element", parser.getLocation());
+			}
+		}
+	}
 
-				case Node.TEXT_NODE -> {
-					// Load optional text content
-					final String text = child.getNodeValue().trim();
-					if(!text.isEmpty()) {
-						builder.text(text);
+	/**
+	 * Input stream adapter for a byte buffer.
+	 */
+	private static class BufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		/**
+		 * Constructor.
+		 * @param buffer Byte buffer
+		 */
+		BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			if(buffer.hasRemaining()) {
+				return buffer.get() & 0xFF;
+			}
+			else {
+				return -1;
+			}
+		}
+
+		@Override
+		public int read(byte[] bytes, int off, int len) {
+			if(len == 0) {
+				return 0;
+			}
+
+			final int remaining = buffer.remaining();
+			if(remaining == 0) {
+				return -1;
+			}
+
+			final int count = Math.min(len, remaining);
+			buffer.get(bytes, off, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+	/**
+	 * Result of loading a batch of documents.
+	 * @param elements		Loaded documents indexed by path
+	 * @param errors		Documents that could not be loaded indexed by path
+	 * @see ElementLoader#loadAll(Collection, int)
+	 */
+	public record Batch(Map<Path, Element> elements, Map<Path, Exception> errors) {
+		/**
+		 * Constructor.
+		 * @param elements		Loaded documents indexed by path
+		 * @param errors		Documents that could not be loaded indexed by path
+		 */
+		public Batch {
+			elements = Collections.unmodifiableMap(elements);
+			errors = Collections.unmodifiableMap(errors);
+		}
+
+		/**
+		 * @return Whether all documents in this batch were loaded successfully
+		 */
+		public boolean isSuccess() {
+			return errors.isEmpty();
+		}
+	}
+
+	/**
+	 * Loads a batch of XML documents in parallel.
+	 * <p>
+	 * Documents are loaded using a pool of at most {@code parallelism} threads.
+	 * Any document that cannot be loaded is recorded in {@link Batch#errors()} rather than failing the whole batch.
+	 * The results are ordered by the given collection of paths.
+	 * <p>
+	 * @param paths				Document paths
+	 * @param parallelism		Maximum number of concurrent loads
+	 * @return Batch results
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for the batch to complete
+	 */
+	public Batch loadAll(Collection<Path> paths, int parallelism) throws InterruptedException {
+		Check.oneOrMore(parallelism);
+
+		// Init results
+		final Map<Path, Element> elements = new LinkedHashMap<>();
+		final Map<Path, Exception> errors = new LinkedHashMap<>();
+		if(paths.isEmpty()) {
+			return new Batch(elements, errors);
+		}
+
+		// Load documents
+		final List<Callable<Element>> tasks = paths.stream().<Callable<Element>>map(path -> () -> load(path)).toList();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+		final List<Future<Element>> results;
+		try {
+			results = executor.invokeAll(tasks);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		// Gather results
+		final Iterator<Future<Element>> itr = results.iterator();
+		for(Path path : paths) {
+			try {
+				elements.put(path, itr.next().get());
+			}
+			catch(ExecutionException e) {
+				if(e.getCause() instanceof Exception cause) {
+					errors.put(path, cause);
+				}
+				else {
+					throw (Error) e.getCause();
+				}
+			}
+		}
+
+		return new Batch(elements, errors);
+	}
+
+	/**
+	 * Loads a batch of XML documents in parallel using all available processors.
+	 * @param paths Document paths
+	 * @return Batch results
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for the batch to complete
+	 * @see #loadAll(Collection, int)
+	 */
+	public Batch loadAll(Collection<Path> paths) throws InterruptedException {
+		return loadAll(paths, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Loads the XML documents in the given directory that match a glob pattern, e.g. {@code *.xml}.
+	 * @param dir		Directory
+	 * @param glob		Glob pattern
+	 * @return Batch results
+	 * @throws IOException if the directory cannot be read
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for the batch to complete
+	 * @see #loadAll(Collection)
+	 * @see FileSystem#getPathMatcher(String)
+	 */
+	public Batch loadDirectory(Path dir, String glob) throws IOException, InterruptedException {
+		final List<Path> paths = new ArrayList<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+			for(Path path : stream) {
+				if(Files.isRegularFile(path)) {
+					paths.add(path);
+				}
+			}
+		}
+		Collections.sort(paths);
+		return loadAll(paths);
+	}
+
+	/**
+	 * Streams the <i>records</i> of an XML document.
+	 * <p>
+	 * A record is an element whose location matches the given path, specified as a slash-delimited list of element names starting at the root element, e.g. {@code feed/record}.
+	 * Each matching element is loaded as a detached tree, all other content is skipped.
+	 * Memory usage therefore depends on the size of each record rather than the document.
+	 * <p>
+	 * The returned stream should be closed after use, which also closes the given reader.
+	 * <p>
+	 * Example:
+	 * <pre>
+	 * try(Stream&lt;Element&gt; records = loader.stream(reader, "feed/record")) {
+	 *     records.forEach(...);
+	 * }
+	 * </pre>
+	 * <p>
+	 * @param r			XML reader
+	 * @param path		Record path
+	 * @return Records
+	 * @throws IOException if the XML parser cannot be created
+	 * @throws UncheckedIOException if the XML cannot be parsed during traversal of the stream
+	 */
+	public Stream<Element> stream(Reader r, String path) throws IOException {
+		try {
+			return stream(FACTORY.createXMLStreamReader(r), path, r);
+		}
+		catch(XMLStreamException e) {
+			throw new IOException("Error creating XML parser", e);
+		}
+	}
+
+	/**
+	 * Streams the <i>records</i> of an XML document from the given file.
+	 * The returned stream should be closed after use.
+	 * @param file		File path
+	 * @param path		Record path
+	 * @return Records
+	 * @throws IOException if the file cannot be opened
+	 * @throws UncheckedIOException if the XML cannot be parsed during traversal of the stream
+	 * @see #stream(Reader, String)
+	 */
+	public Stream<Element> stream(Path file, String path) throws IOException {
+		final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return stream(FACTORY.createXMLStreamReader(input(channel)), path, channel);
+		}
+		catch(XMLStreamException e) {
+			channel.close();
+			throw new IOException("Error creating XML parser", e);
+		}
+	}
+
+	/**
+	 * Creates a record stream.
+	 * @param parser		XML parser
+	 * @param path			Record path
+	 * @param input			Underlying input
+	 * @return Records
+	 */
+	private Stream<Element> stream(XMLStreamReader parser, String path, Closeable input) {
+		final String[] names = path.replaceFirst("^/", "").split("/");
+		return StreamSupport.stream(new RecordSpliterator(parser, names), false).onClose(() -> close(parser, input));
+	}
+
+	/**
+	 * Releases the resources for a record stream.
+	 */
+	private static void close(XMLStreamReader parser, Closeable input) {
+		try {
+			parser.close();
+			input.close();
+		}
+		catch(XMLStreamException e) {
+			throw new UncheckedIOException(new IOException("Error closing XML parser", e));
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Spliterator that loads the records of a document.
+	 */
+	private class RecordSpliterator extends AbstractSpliterator<Element> {
+		private final XMLStreamReader parser;
+		private final String[] path;
+		private final TreeBuilder builder = new TreeBuilder(symbols);
+		private int depth;
+		private int matched;
+
+		/**
+		 * Constructor.
+		 * @param parser		XML parser
+		 * @param path			Record path
+		 */
+		RecordSpliterator(XMLStreamReader parser, String[] path) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			this.parser = parser;
+			this.path = path;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Element> action) {
+			try {
+				while(parser.hasNext()) {
+					switch(parser.next()) {
+						case XMLStreamConstants.START_ELEMENT -> {
+							// Check whether the path to this element matches
+							if((matched == depth) && path[depth].equals(name(parser.getPrefix(), parser.getLocalName()))) {
+								if(matched + 1 == path.length) {
+									// Load record
+									action.accept(load(parser, builder));
+									return true;
+								}
+								++matched;
+							}
+							++depth;
+						}
+
+						case XMLStreamConstants.END_ELEMENT -> {
+							--depth;
+							matched = Math.min(matched, depth);
+						}
 					}
 				}
+				return false;
+			}
+			catch(XMLStreamException e) {
+				throw new UncheckedIOException(new IOException("Error parsing XML document", e));
 			}
 		}
 	}
+
+	/**
+	 * Loads the element tree starting at the current start tag.
+	 * On completion the parser is positioned at the corresponding end tag.
+	 * @param parser XML parser
+	 * @return Element
+	 * @throws XMLStreamException if the XML cannot be parsed
+	 */
+	private Element load(XMLStreamReader parser) throws XMLStreamException {
+		return load(parser, new TreeBuilder(symbols));
+	}
+
+	/**
+	 * Loads the element tree starting at the current start tag using the given arena.
+	 * @param parser		XML parser
+	 * @param builder		Tree builder
+	 * @return Element
+	 * @throws XMLStreamException if the XML cannot be parsed
+	 */
+	private static Element load(XMLStreamReader parser, TreeBuilder builder) throws XMLStreamException {
+		final StringBuilder text = new StringBuilder();
+		start(parser, builder);
+
+		while(true) {
+			switch(parser.next()) {
+				case XMLStreamConstants.START_ELEMENT -> {
+					// Start child element
+					text(text, builder);
+					start(parser, builder);
+				}
+
+				case XMLStreamConstants.END_ELEMENT -> {
+					// Complete element
+					text(text, builder);
+					builder.pop();
+					if(builder.depth() == 0) {
+						return builder.build();
+					}
+				}
+
+				case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+					// Accumulate text content
+					text.append(parser.getTextCharacters(), parser.getTextStart(), parser.getTextLength());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts an element from the current start tag.
+	 * @param parser		XML parser
+	 * @param builder		Tree builder
+	 */
+	private static void start(XMLStreamReader parser, TreeBuilder builder) {
+		builder.push(name(parser.getPrefix(), parser.getLocalName()));
+		final int count = parser.getAttributeCount();
+		for(int n = 0; n < count; ++n) {
+			builder.attribute(name(parser.getAttributePrefix(n), parser.getAttributeLocalName(n)), parser.getAttributeValue(n));
+		}
+	}
+
+	/**
+	 * @return Qualified name
+	 */
+	private static String name(String prefix, String local) {
+		if((prefix == null) || prefix.isEmpty()) {
+			return local;
+		}
+		else {
+			return prefix + ":" + local;
+		}
+	}
+
+	/**
+	 * Loads optional text content.
+	 * @param text			Accumulated text
+	 * @param builder		Tree builder
+	 */
+	private static void text(StringBuilder text, TreeBuilder builder) {
+		if(text.isEmpty()) {
+			return;
+		}
+
+		final String str = text.toString().trim();
+		if(!str.isEmpty()) {
+			builder.text(str);
+		}
+		text.setLength(0);
+	}
 }
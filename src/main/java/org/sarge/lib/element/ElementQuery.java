@@ -0,0 +1,458 @@
+package org.sarge.lib.element;
+
+import static org.sarge.lib.util.Check.notEmpty;
+
+import java.util.*;
+
+/**
+ * An <i>element query</i> is a compiled XPath-like expression that selects elements from a tree.
+ * <p>
+ * A query is comprised of a slash-delimited sequence of <i>steps</i>:
+ * <ul>
+ * <li>{@code name} selects the children with the given name</li>
+ * <li>{@code *} selects all children</li>
+ * <li>{@code //name} selects all descendants with the given name</li>
+ * <li>{@code name[@key]} selects children that have the given attribute</li>
+ * <li>{@code name[@key='value']} selects children with the given attribute value</li>
+ * <li>{@code name[2]} selects children with the given sibling index (starting at one), see {@link Element#index()}</li>
+ * </ul>
+ * <p>
+ * A query is relative to the element that it is applied to, unless the expression starts with a slash in which case the first step is matched against the root element of the tree.
+ * <p>
+ * The expression is parsed once into a reusable, thread-safe matcher.
+ * Queries are evaluated without intermediate streams and child steps use the name index of wide elements.
+ * <p>
+ * Example:
+ * <pre>
+ * ElementQuery query = ElementQuery.compile("a/b[@id='x']/c");
+ * List&lt;Element&gt; results = query.select(root);
+ * </pre>
+ * <p>
+ * @author Sarge
+ */
+public final class ElementQuery {
+	/**
+	 * Step predicate.
+	 */
+	private sealed interface Predicate {
+		/**
+		 * @param e Element
+		 * @return Whether the given element matches this predicate
+		 */
+		boolean test(Element e);
+	}
+
+	/**
+	 * Predicate for an attribute that is present or has a given value.
+	 */
+	private record AttributePredicate(String name, String value) implements Predicate {
+		@Override
+		public boolean test(Element e) {
+			final String actual = e.attributes().get(name);
+			if(value == null) {
+				return actual != null;
+			}
+			else {
+				return value.equals(actual);
+			}
+		}
+
+		@Override
+		public String toString() {
+			if(value == null) {
+				return "[@" + name + "]";
+			}
+			else {
+				return "[@" + name + "='" + value + "']";
+			}
+		}
+	}
+
+	/**
+	 * Predicate for the sibling index of an element.
+	 */
+	private record PositionPredicate(int index) implements Predicate {
+		@Override
+		public boolean test(Element e) {
+			return e.index() == index;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + index + "]";
+		}
+	}
+
+	/**
+	 * Query step.
+	 * @param descendant		Whether this step selects descendants or children
+	 * @param name				Element name or {@code null} for any element
+	 * @param predicates		Predicates
+	 */
+	private record Step(boolean descendant, String name, Predicate[] predicates) {
+		/**
+		 * @return Whether the given element matches this step
+		 */
+		boolean matches(Element e) {
+			if((name != null) && !name.equals(e.name())) {
+				return false;
+			}
+			for(Predicate p : predicates) {
+				if(!p.test(e)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Selects the children of the given element that match this step.
+		 * @param parent		Parent element
+		 * @param results		Results
+		 */
+		void children(Element parent, List<Element> results) {
+			// Select candidates
+			final List<Element> candidates;
+			if(name == null) {
+				candidates = parent.childList();
+			}
+			else {
+				candidates = parent.named(name);
+
+				// Direct lookup by sibling index
+				if((predicates.length > 0) && (predicates[0] instanceof PositionPredicate pos)) {
+					if(pos.index <= candidates.size()) {
+						final Element e = candidates.get(pos.index - 1);
+						if(matches(e)) {
+							results.add(e);
+						}
+					}
+					return;
+				}
+			}
+
+			// Filter candidates
+			for(Element e : candidates) {
+				if(matches(e)) {
+					results.add(e);
+				}
+			}
+		}
+
+		/**
+		 * Selects the descendants of the given element that match this step in document order.
+		 * @param parent		Parent element
+		 * @param results		Results
+		 * @param visited		Elements already selected
+		 */
+		void descendants(Element parent, List<Element> results, Set<Element> visited) {
+			final Deque<Element> stack = new ArrayDeque<>();
+			push(parent, stack);
+			while(!stack.isEmpty()) {
+				final Element e = stack.pop();
+				if(matches(e) && visited.add(e)) {
+					results.add(e);
+				}
+				push(e, stack);
+			}
+		}
+
+		/**
+		 * Pushes the children of an element such that they are popped in document order.
+		 */
+		private static void push(Element e, Deque<Element> stack) {
+			final List<Element> children = e.childList();
+			for(int n = children.size() - 1; n >= 0; --n) {
+				stack.push(children.get(n));
+			}
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder str = new StringBuilder();
+			if(descendant) {
+				str.append('/');
+			}
+			if(name == null) {
+				str.append('*');
+			}
+			else {
+				str.append(name);
+			}
+			for(Predicate p : predicates) {
+				str.append(p);
+			}
+			return str.toString();
+		}
+	}
+
+	/**
+	 * Compiles a query.
+	 * @param expression Query expression
+	 * @return Compiled query
+	 * @throws IllegalArgumentException if the expression is not valid
+	 */
+	public static ElementQuery compile(String expression) {
+		return new Parser(notEmpty(expression)).parse();
+	}
+
+	private final boolean absolute;
+	private final Step[] steps;
+
+	/**
+	 * Constructor.
+	 * @param absolute		Whether this query starts at the root element
+	 * @param steps			Steps
+	 */
+	private ElementQuery(boolean absolute, Step[] steps) {
+		this.absolute = absolute;
+		this.steps = steps;
+	}
+
+	/**
+	 * Selects the elements matching this query in document order.
+	 * @param context Element to query
+	 * @return Matching elements
+	 */
+	public List<Element> select(Element context) {
+		List<Element> current = new ArrayList<>();
+		int start = 0;
+		boolean nested = false;
+		Map<Element, Integer> order = null;
+
+		// Init starting element
+		if(absolute) {
+			// Match the first step against the root element
+			final Element root = context.path().get(0);
+			final Step first = steps[0];
+			if(first.matches(root)) {
+				current.add(root);
+			}
+			if(first.descendant) {
+				first.descendants(root, current, Collections.newSetFromMap(new IdentityHashMap<>()));
+				nested = true;
+			}
+			start = 1;
+		}
+		else {
+			current.add(context);
+		}
+
+		// Apply steps
+		for(int n = start; n < steps.length; ++n) {
+			final Step step = steps[n];
+			final List<Element> next = new ArrayList<>();
+			if(step.descendant) {
+				final Set<Element> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+				for(Element e : current) {
+					step.descendants(e, next, visited);
+				}
+				nested = true;
+			}
+			else {
+				for(Element e : current) {
+					step.children(e, next);
+				}
+
+				// Restore document order if the context elements can be nested
+				if(nested && (next.size() > 1)) {
+					if(order == null) {
+						order = order(context.path().get(0));
+					}
+					next.sort(Comparator.comparing(order::get));
+				}
+			}
+			if(next.isEmpty()) {
+				return List.of();
+			}
+			current = next;
+		}
+
+		return current;
+	}
+
+	/**
+	 * Enumerates the elements of a document in document order.
+	 * @param root Root element
+	 * @return Document position of each element
+	 */
+	private static Map<Element, Integer> order(Element root) {
+		final Map<Element, Integer> order = new IdentityHashMap<>();
+		final Deque<Element> stack = new ArrayDeque<>();
+		stack.push(root);
+		while(!stack.isEmpty()) {
+			final Element e = stack.pop();
+			order.put(e, order.size());
+			final List<Element> children = e.childList();
+			for(int n = children.size() - 1; n >= 0; --n) {
+				stack.push(children.get(n));
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Selects the first element matching this query.
+	 * @param context Element to query
+	 * @return First matching element
+	 */
+	public Optional<Element> first(Element context) {
+		final List<Element> results = select(context);
+		if(results.isEmpty()) {
+			return Optional.empty();
+		}
+		else {
+			return Optional.of(results.get(0));
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringJoiner str = new StringJoiner("/");
+		for(Step step : steps) {
+			str.add(step.toString());
+		}
+		if(absolute) {
+			return "/" + str;
+		}
+		else {
+			return str.toString();
+		}
+	}
+
+	/**
+	 * Query expression parser.
+	 */
+	private static class Parser {
+		private final String expr;
+		private int pos;
+
+		/**
+		 * Constructor.
+		 * @param expr Query expression
+		 */
+		Parser(String expr) {
+			this.expr = expr;
+		}
+
+		/**
+		 * @return Exception for an invalid expression
+		 */
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(String.format("%s at index %d: %s", message, pos, expr));
+		}
+
+		/**
+		 * @return Whether the next character is the given character, which is consumed if present
+		 */
+		private boolean consume(char c) {
+			if((pos < expr.length()) && (expr.charAt(pos) == c)) {
+				++pos;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Parses the query expression.
+		 * @return Query
+		 */
+		ElementQuery parse() {
+			final boolean absolute = consume('/');
+			final List<Step> steps = new ArrayList<>();
+			boolean descendant = absolute && consume('/');
+			while(true) {
+				steps.add(step(descendant));
+				if(pos == expr.length()) {
+					break;
+				}
+				if(!consume('/')) throw error("Expected step delimiter");
+				descendant = consume('/');
+			}
+			return new ElementQuery(absolute, steps.toArray(Step[]::new));
+		}
+
+		/**
+		 * Parses a step.
+		 */
+		private Step step(boolean descendant) {
+			// Parse name
+			final String name;
+			if(consume('*')) {
+				name = null;
+			}
+			else {
+				name = token();
+			}
+
+			// Parse predicates
+			final List<Predicate> predicates = new ArrayList<>();
+			while(consume('[')) {
+				predicates.add(predicate());
+				if(!consume(']')) throw error("Expected end of predicate");
+			}
+
+			// Ensure position predicate is first to allow direct lookups
+			predicates.sort(Comparator.comparing(p -> !(p instanceof PositionPredicate)));
+
+			return new Step(descendant, name, predicates.toArray(Predicate[]::new));
+		}
+
+		/**
+		 * Parses a predicate.
+		 */
+		private Predicate predicate() {
+			if(consume('@')) {
+				// Parse attribute predicate
+				final String attr = token();
+				if(consume('=')) {
+					return new AttributePredicate(attr, literal());
+				}
+				else {
+					return new AttributePredicate(attr, null);
+				}
+			}
+			else {
+				// Parse position predicate
+				final int start = pos;
+				while((pos < expr.length()) && Character.isDigit(expr.charAt(pos))) {
+					++pos;
+				}
+				if(pos == start) throw error("Expected attribute or position predicate");
+				final int index = Integer.parseInt(expr.substring(start, pos));
+				if(index < 1) throw error("Invalid position");
+				return new PositionPredicate(index);
+			}
+		}
+
+		/**
+		 * Parses a name token.
+		 */
+		private String token() {
+			final int start = pos;
+			while(pos < expr.length()) {
+				final char c = expr.charAt(pos);
+				if((c == '/') || (c == '[') || (c == ']') || (c == '=') || (c == '@') || (c == '*') || Character.isWhitespace(c)) {
+					break;
+				}
+				++pos;
+			}
+			if(pos == start) throw error("Expected name");
+			return expr.substring(start, pos);
+		}
+
+		/**
+		 * Parses a quoted literal.
+		 */
+		private String literal() {
+			if(pos == expr.length()) throw error("Expected literal");
+			final char quote = expr.charAt(pos);
+			if((quote != '\'') && (quote != '"')) throw error("Expected quoted literal");
+			final int end = expr.indexOf(quote, pos + 1);
+			if(end < 0) throw error("Unterminated literal");
+			final String literal = expr.substring(pos + 1, end);
+			pos = end + 1;
+			return literal;
+		}
+	}
+}
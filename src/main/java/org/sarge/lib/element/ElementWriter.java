@@ -0,0 +1,234 @@
+package org.sarge.lib.element;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The <i>element writer</i> serialises an element tree as an XML document.
+ * <p>
+ * The tree is written iteratively directly to the underlying output, i.e. memory usage is independent of the size of the tree.
+ * Text and attribute values are escaped using a lookup table.
+ * Characters that are illegal in an XML 1.0 document (control characters other than tab, line-feed and carriage-return, {@code U+FFFE} or {@code U+FFFF}, and unpaired surrogates) cannot be represented and are rejected.
+ * <p>
+ * The output is either <i>compact</i> or <i>pretty</i> printed with each child element on a new line and indented by a tab.
+ * Note that the text content of an element is always written before its children.
+ * <p>
+ * Byte-oriented output is encoded as UTF-8, the default encoding for an XML document.
+ * <p>
+ * Example:
+ * <pre>
+ * new ElementWriter(out, true).write(root);
+ * </pre>
+ * <p>
+ * @see ElementLoader
+ * @author Sarge
+ */
+public class ElementWriter {
+	private static final String[] TEXT = new String[128];
+	private static final String[] ATTRIBUTE = new String[128];
+	private static final String ILLEGAL = new String();
+
+	static {
+		TEXT['<'] = "&lt;";
+		TEXT['>'] = "&gt;";
+		TEXT['&'] = "&amp;";
+		for(int n = 0; n < 0x20; ++n) {
+			if((n != '\n') && (n != '\t') && (n != '\r')) {
+				TEXT[n] = ILLEGAL;
+			}
+		}
+		TEXT['\r'] = "&#13;";
+		System.arraycopy(TEXT, 0, ATTRIBUTE, 0, TEXT.length);
+		ATTRIBUTE['"'] = "&quot;";
+		ATTRIBUTE['\n'] = "&#10;";
+		ATTRIBUTE['\t'] = "&#9;";
+	}
+
+	/**
+	 * Writer frame for an open element.
+	 */
+	private static class Frame {
+		private final Element element;
+		private int index;
+
+		/**
+		 * Constructor.
+		 * @param element Element
+		 */
+		Frame(Element element) {
+			this.element = element;
+		}
+	}
+
+	private final Writer out;
+	private final boolean pretty;
+
+	/**
+	 * Constructor.
+	 * @param out			Output writer
+	 * @param pretty		Whether to pretty print the output
+	 */
+	public ElementWriter(Writer out, boolean pretty) {
+		this.out = new BufferedWriter(out, 1 << 16);
+		this.pretty = pretty;
+	}
+
+	/**
+	 * Constructor for compact output.
+	 * @param out Output writer
+	 */
+	public ElementWriter(Writer out) {
+		this(out, false);
+	}
+
+	/**
+	 * Constructor for byte-oriented output.
+	 * @param out			Output stream
+	 * @param pretty		Whether to pretty print the output
+	 */
+	public ElementWriter(OutputStream out, boolean pretty) {
+		this(new OutputStreamWriter(out, StandardCharsets.UTF_8), pretty);
+	}
+
+	/**
+	 * Constructor for a channel.
+	 * @param channel		Output channel
+	 * @param pretty		Whether to pretty print the output
+	 */
+	public ElementWriter(WritableByteChannel channel, boolean pretty) {
+		this(Channels.newWriter(channel, StandardCharsets.UTF_8), pretty);
+	}
+
+	/**
+	 * Writes an element tree.
+	 * @param root Root element
+	 * @throws IOException if the XML cannot be written
+	 */
+	public void write(Element root) throws IOException {
+		final Deque<Frame> stack = new ArrayDeque<>();
+		open(root, stack);
+
+		while(!stack.isEmpty()) {
+			final Frame frame = stack.peek();
+			final List<Element> children = frame.element.childList();
+			if(frame.index < children.size()) {
+				// Write next child
+				newline(stack.size());
+				open(children.get(frame.index++), stack);
+			}
+			else {
+				// Close element
+				stack.pop();
+				newline(stack.size());
+				out.write("</");
+				out.write(frame.element.name());
+				out.write('>');
+			}
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * Writes the start tag and text content of an element.
+	 * An element with children is pushed onto the stack, otherwise the element is closed.
+	 * @param e			Element
+	 * @param stack		Stack
+	 */
+	private void open(Element e, Deque<Frame> stack) throws IOException {
+		// Write start tag
+		out.write('<');
+		out.write(e.name());
+		for(var entry : e.attributes().entrySet()) {
+			out.write(' ');
+			out.write(entry.getKey());
+			out.write("=\"");
+			escape(entry.getValue(), ATTRIBUTE);
+			out.write('"');
+		}
+
+		// Write empty element
+		final Element.Content text = e.text();
+		final boolean leaf = e.childList().isEmpty();
+		if(leaf && !text.isPresent()) {
+			out.write("/>");
+			return;
+		}
+		out.write('>');
+
+		// Write text content
+		if(text.isPresent()) {
+			if(!leaf) {
+				newline(stack.size() + 1);
+			}
+			escape(text.toString(), TEXT);
+		}
+
+		// Close element or start children
+		if(leaf) {
+			out.write("</");
+			out.write(e.name());
+			out.write('>');
+		}
+		else {
+			stack.push(new Frame(e));
+		}
+	}
+
+	/**
+	 * Writes a new line and indentation when pretty printing.
+	 * @param depth Indentation depth
+	 */
+	private void newline(int depth) throws IOException {
+		if(pretty) {
+			out.write('\n');
+			for(int n = 0; n < depth; ++n) {
+				out.write('\t');
+			}
+		}
+	}
+
+	/**
+	 * Writes an escaped string.
+	 * @param str			String
+	 * @param table			Escape table
+	 * @throws IOException if the string contains a character that is illegal in XML
+	 */
+	private void escape(String str, String[] table) throws IOException {
+		int start = 0;
+		final int len = str.length();
+		for(int n = 0; n < len; ++n) {
+			final char c = str.charAt(n);
+			if(c >= table.length) {
+				if(c >= 0xFFFE) throw illegal(c);
+				if(Character.isSurrogate(c)) {
+					// Skip valid surrogate pair
+					if(Character.isHighSurrogate(c) && (n + 1 < len) && Character.isLowSurrogate(str.charAt(n + 1))) {
+						++n;
+					}
+					else {
+						throw illegal(c);
+					}
+				}
+				continue;
+			}
+			if(table[c] == null) {
+				continue;
+			}
+			if(table[c] == ILLEGAL) throw illegal(c);
+			out.write(str, start, n - start);
+			out.write(table[c]);
+			start = n + 1;
+		}
+		out.write(str, start, len - start);
+	}
+
+	/**
+	 * @return Exception for a character that is illegal in XML
+	 */
+	private static IOException illegal(char c) {
+		return new CharConversionException(String.format("Character U+%04X cannot be represented in XML", (int) c));
+	}
+}
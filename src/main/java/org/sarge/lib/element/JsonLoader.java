@@ -0,0 +1,487 @@
+package org.sarge.lib.element;
+
+import static org.sarge.lib.util.Check.notNull;
+
+import java.io.*;
+import java.util.*;
+
+import org.sarge.lib.element.Element.Builder;
+import org.sarge.lib.util.SymbolTable;
+
+/**
+ * Element loader for a JSON document.
+ * <p>
+ * This implementation is a hand-written tokenizer that builds the element tree directly and iteratively from the JSON text.
+ * The input is read through a fixed buffer and strings are decoded using a single reusable buffer.
+ * <p>
+ * JSON values are mapped to elements consistently with the {@link YamlLoader}:
+ * <ul>
+ * <li>the document is loaded as an element named {@code root}</li>
+ * <li>an object member with a scalar value is an <i>attribute</i>, numbers and booleans are loaded as their literal text and {@code null} is an empty string</li>
+ * <li>an object member with an object value is a <i>child</i> element with the name of the member</li>
+ * <li>an object member with an array value is a child element per item, each with the name of the member</li>
+ * <li>a scalar array item is the <i>text</i> content of the child element</li>
+ * <li>a scalar member named {@link #TEXT} is the text content of the element</li>
+ * <li>the items of a top-level array are named {@link YamlLoader#ITEM}</li>
+ * </ul>
+ * <p>
+ * Nested arrays are not supported.
+ * <p>
+ * @see JsonWriter
+ * @author Sarge
+ */
+public class JsonLoader {
+	/**
+	 * Name of the member representing the text content of an element.
+	 */
+	public static final String TEXT = "#text";
+
+	private final SymbolTable symbols;
+
+	/**
+	 * Constructor.
+	 * @param symbols Symbol table for element and attribute names
+	 */
+	public JsonLoader(SymbolTable symbols) {
+		this.symbols = notNull(symbols);
+	}
+
+	/**
+	 * Constructor using the default shared symbol table.
+	 */
+	public JsonLoader() {
+		this(ElementLoader.SYMBOLS);
+	}
+
+	/**
+	 * Loads a JSON document.
+	 * @param r JSON reader
+	 * @return Root element
+	 * @throws IOException if the JSON cannot be loaded
+	 */
+	public Element load(Reader r) throws IOException {
+		return new Parser(r).document();
+	}
+
+	/**
+	 * Parser frame for an open object or array.
+	 */
+	private static class Frame {
+		private final boolean object;
+		private final Builder builder;
+		private final String key;
+		private boolean first = true;
+
+		/**
+		 * Constructor.
+		 * @param object		Whether this frame is an object or an array
+		 * @param builder		Object element or the parent of the array items
+		 * @param key			Array item name
+		 */
+		Frame(boolean object, Builder builder, String key) {
+			this.object = object;
+			this.builder = builder;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * JSON parser.
+	 */
+	private class Parser {
+		private final Reader reader;
+		private final char[] buffer = new char[8192];
+		private final StringBuilder str = new StringBuilder();
+		private int pos, limit;
+		private long offset;
+
+		/**
+		 * Constructor.
+		 * @param reader JSON reader
+		 */
+		Parser(Reader reader) {
+			this.reader = reader;
+		}
+
+		/**
+		 * Creates a parse exception.
+		 * @param message Message
+		 * @return Exception
+		 */
+		private IOException error(String message) {
+			return new IOException(String.format("Invalid JSON at offset %d: %s", offset + pos, message));
+		}
+
+		/**
+		 * Peeks the next non-whitespace character.
+		 * @return Next character or {@code -1} for the end of the document
+		 */
+		private int peek() throws IOException {
+			while(true) {
+				if(pos == limit) {
+					offset += limit;
+					limit = reader.read(buffer);
+					pos = 0;
+					if(limit <= 0) {
+						limit = 0;
+						return -1;
+					}
+				}
+				final char c = buffer[pos];
+				if((c != ' ') && (c != '\n') && (c != '\r') && (c != '\t')) {
+					return c;
+				}
+				++pos;
+			}
+		}
+
+		/**
+		 * Reads the next character without skipping whitespace.
+		 */
+		private char read() throws IOException {
+			if(pos == limit) {
+				offset += limit;
+				limit = reader.read(buffer);
+				pos = 0;
+				if(limit <= 0) {
+					limit = 0;
+					throw error("Unexpected end of document");
+				}
+			}
+			return buffer[pos++];
+		}
+
+		/**
+		 * Consumes the expected character.
+		 */
+		private void expect(char expected) throws IOException {
+			if(peek() != expected) throw error("Expected '" + expected + "'");
+			++pos;
+		}
+
+		/**
+		 * Loads the document.
+		 * @return Root element
+		 */
+		Element document() throws IOException {
+			// Load root value
+			final Builder root = new Builder(symbols);
+			final Deque<Frame> stack = new ArrayDeque<>();
+			switch(peek()) {
+				case '{' -> {
+					++pos;
+					stack.push(new Frame(true, root, null));
+				}
+				case '[' -> {
+					++pos;
+					stack.push(new Frame(false, root, YamlLoader.ITEM));
+				}
+				default -> text(root, scalar());
+			}
+
+			// Load tree
+			while(!stack.isEmpty()) {
+				final Frame frame = stack.peek();
+
+				// Check for end of object or array
+				final int c = peek();
+				if(((c == '}') && frame.object) || ((c == ']') && !frame.object)) {
+					++pos;
+					stack.pop();
+					if(frame.object && (frame.builder != root)) {
+						frame.builder.end();
+					}
+					continue;
+				}
+
+				// Consume separator
+				if(frame.first) {
+					frame.first = false;
+				}
+				else {
+					expect(',');
+				}
+
+				// Load next member or item
+				if(frame.object) {
+					member(frame.builder, stack);
+				}
+				else {
+					item(frame, stack);
+				}
+			}
+
+			// Check document was fully consumed
+			if(peek() != -1) throw error("Unexpected content");
+
+			return root.build();
+		}
+
+		/**
+		 * Loads an object member.
+		 * @param builder		Object element
+		 * @param stack			Frame stack
+		 */
+		private void member(Builder builder, Deque<Frame> stack) throws IOException {
+			if(peek() != '"') throw error("Expected member name");
+			++pos;
+			final String key = string();
+			if(key.isEmpty()) throw error("Empty member name");
+			expect(':');
+			switch(peek()) {
+				case '{' -> {
+					++pos;
+					stack.push(new Frame(true, builder.child().name(key), null));
+				}
+				case '[' -> {
+					++pos;
+					stack.push(new Frame(false, builder, key));
+				}
+				default -> {
+					final String value = scalar();
+					if(TEXT.equals(key)) {
+						text(builder, value);
+					}
+					else {
+						builder.attribute(key, value);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Loads an array item.
+		 * @param frame			Array frame
+		 * @param stack			Frame stack
+		 */
+		private void item(Frame frame, Deque<Frame> stack) throws IOException {
+			switch(peek()) {
+				case '{' -> {
+					++pos;
+					stack.push(new Frame(true, frame.builder.child().name(frame.key), null));
+				}
+				case '[' -> throw error("Nested arrays are not supported");
+				default -> {
+					final Builder item = frame.builder.child().name(frame.key);
+					text(item, scalar());
+					item.end();
+				}
+			}
+		}
+
+		/**
+		 * Loads a scalar value.
+		 * @return Scalar
+		 */
+		private String scalar() throws IOException {
+			final int c = peek();
+			if(c == '"') {
+				++pos;
+				return string();
+			}
+			else
+			if((c == '-') || ((c >= '0') && (c <= '9'))) {
+				return number();
+			}
+			else
+			if(c == 't') {
+				literal("true");
+				return "true";
+			}
+			else
+			if(c == 'f') {
+				literal("false");
+				return "false";
+			}
+			else
+			if(c == 'n') {
+				literal("null");
+				return "";
+			}
+			else {
+				throw error("Expected value");
+			}
+		}
+
+		/**
+		 * Consumes a literal.
+		 */
+		private void literal(String literal) throws IOException {
+			for(int n = 0; n < literal.length(); ++n) {
+				if(read() != literal.charAt(n)) throw error("Invalid literal");
+			}
+		}
+
+		/**
+		 * Loads a number as its literal text.
+		 */
+		private String number() throws IOException {
+			str.setLength(0);
+			while(true) {
+				if((pos == limit) && (peekRaw() < 0)) {
+					break;
+				}
+				final char c = buffer[pos];
+				if(((c >= '0') && (c <= '9')) || (c == '-') || (c == '+') || (c == '.') || (c == 'e') || (c == 'E')) {
+					str.append(c);
+					++pos;
+				}
+				else {
+					break;
+				}
+			}
+			if(!isNumber(str)) throw error("Invalid number: " + str);
+			return str.toString();
+		}
+
+		/**
+		 * Validates a number against the JSON grammar, i.e. {@code -?(0|[1-9]\d*)(\.\d+)?([eE][+-]?\d+)?}.
+		 * @param number Number literal
+		 * @return Whether the given literal is a valid JSON number
+		 */
+		private static boolean isNumber(CharSequence number) {
+			final int len = number.length();
+			int n = 0;
+
+			// Sign
+			if((n < len) && (number.charAt(n) == '-')) {
+				++n;
+			}
+
+			// Integer part without leading zeros
+			if(n == len) {
+				return false;
+			}
+			if(number.charAt(n) == '0') {
+				++n;
+			}
+			else {
+				final int start = n;
+				n = digits(number, n);
+				if(n == start) {
+					return false;
+				}
+			}
+
+			// Fraction
+			if((n < len) && (number.charAt(n) == '.')) {
+				final int start = ++n;
+				n = digits(number, n);
+				if(n == start) {
+					return false;
+				}
+			}
+
+			// Exponent
+			if((n < len) && ((number.charAt(n) == 'e') || (number.charAt(n) == 'E'))) {
+				++n;
+				if((n < len) && ((number.charAt(n) == '+') || (number.charAt(n) == '-'))) {
+					++n;
+				}
+				final int start = n;
+				n = digits(number, n);
+				if(n == start) {
+					return false;
+				}
+			}
+
+			return n == len;
+		}
+
+		/**
+		 * @return Index of the first non-digit character from the given index
+		 */
+		private static int digits(CharSequence number, int start) {
+			int n = start;
+			while((n < number.length()) && (number.charAt(n) >= '0') && (number.charAt(n) <= '9')) {
+				++n;
+			}
+			return n;
+		}
+
+		/**
+		 * Refills the buffer without consuming any characters.
+		 * @return Number of available characters or {@code -1} for the end of the document
+		 */
+		private int peekRaw() throws IOException {
+			offset += limit;
+			limit = reader.read(buffer);
+			pos = 0;
+			if(limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+			return limit;
+		}
+
+		/**
+		 * Loads a string after the opening quote.
+		 */
+		private String string() throws IOException {
+			// Fast path for an unescaped string within the buffer
+			for(int n = pos; n < limit; ++n) {
+				final char c = buffer[n];
+				if(c == '"') {
+					final String result = new String(buffer, pos, n - pos);
+					pos = n + 1;
+					return result;
+				}
+				if((c == '\\') || (c < 0x20)) {
+					break;
+				}
+			}
+
+			// Otherwise decode string
+			str.setLength(0);
+			while(true) {
+				final char c = read();
+				switch(c) {
+					case '"' -> {
+						return str.toString();
+					}
+					case '\\' -> str.append(escape());
+					default -> {
+						if(c < 0x20) throw error("Invalid control character in string");
+						str.append(c);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Decodes an escape sequence.
+		 */
+		private char escape() throws IOException {
+			final char c = read();
+			return switch(c) {
+				case '"', '\\', '/' -> c;
+				case 'b' -> '\b';
+				case 'f' -> '\f';
+				case 'n' -> '\n';
+				case 'r' -> '\r';
+				case 't' -> '\t';
+				case 'u' -> {
+					int code = 0;
+					for(int n = 0; n < 4; ++n) {
+						final int digit = Character.digit(read(), 16);
+						if(digit < 0) throw error("Invalid unicode escape");
+						code = (code << 4) | digit;
+					}
+					yield (char) code;
+				}
+				default -> throw error("Invalid escape sequence: \\" + c);
+			};
+		}
+	}
+
+	/**
+	 * Sets the text content of an element.
+	 * @param builder		Element
+	 * @param text			Text content
+	 */
+	private static void text(Builder builder, String text) {
+		if(!text.isEmpty()) {
+			builder.text(text);
+		}
+	}
+}
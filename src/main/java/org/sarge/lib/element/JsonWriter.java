@@ -0,0 +1,186 @@
+package org.sarge.lib.element;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The <i>JSON writer</i> serialises an element tree as a JSON document.
+ * <p>
+ * The element tree is mapped to JSON using the reverse of the mapping applied by the {@link JsonLoader}:
+ * <ul>
+ * <li>the root element is written as the top-level object, i.e. the name of the root is discarded</li>
+ * <li>attributes are written as string members</li>
+ * <li>the text content of an element with attributes or children is written as the {@link JsonLoader#TEXT} member</li>
+ * <li>children are grouped by name, a single child is written as an object member and multiple children as an array</li>
+ * <li>a child with only text content is written as a string array item</li>
+ * </ul>
+ * <p>
+ * Note that the relative order of children with <i>different</i> names is not preserved, and that attribute values are always written as strings.
+ * <p>
+ * The tree is written iteratively directly to the underlying writer.
+ * <p>
+ * @see JsonLoader
+ * @author Sarge
+ */
+public class JsonWriter {
+	/**
+	 * Writer frame for an open element.
+	 */
+	private static class Frame {
+		private final Iterator<Map.Entry<String, List<Element>>> groups;
+		private int members;
+		private List<Element> items;
+		private int index;
+
+		/**
+		 * Constructor.
+		 * @param groups Children grouped by name
+		 */
+		Frame(Iterator<Map.Entry<String, List<Element>>> groups) {
+			this.groups = groups;
+		}
+	}
+
+	private final Writer out;
+
+	/**
+	 * Constructor.
+	 * @param out Output writer
+	 */
+	public JsonWriter(Writer out) {
+		this.out = new BufferedWriter(out);
+	}
+
+	/**
+	 * Writes an element tree as JSON.
+	 * @param root Root element
+	 * @throws IOException if the JSON cannot be written
+	 */
+	public void write(Element root) throws IOException {
+		final Deque<Frame> stack = new ArrayDeque<>();
+		stack.push(open(root));
+
+		while(!stack.isEmpty()) {
+			final Frame frame = stack.peek();
+
+			// Write next array item
+			if(frame.items != null) {
+				if(frame.index < frame.items.size()) {
+					if(frame.index > 0) {
+						out.write(',');
+					}
+					final Element item = frame.items.get(frame.index++);
+					if(isTextOnly(item)) {
+						string(item.text().toString());
+					}
+					else {
+						stack.push(open(item));
+					}
+				}
+				else {
+					out.write(']');
+					frame.items = null;
+				}
+				continue;
+			}
+
+			// Complete element
+			if(!frame.groups.hasNext()) {
+				out.write('}');
+				stack.pop();
+				continue;
+			}
+
+			// Write next group of children
+			final var group = frame.groups.next();
+			final List<Element> children = group.getValue();
+			member(frame, group.getKey());
+			if((children.size() == 1) && !isTextOnly(children.get(0))) {
+				stack.push(open(children.get(0)));
+			}
+			else {
+				out.write('[');
+				frame.items = children;
+				frame.index = 0;
+			}
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * @return Whether the given element only has text content
+	 */
+	private static boolean isTextOnly(Element e) {
+		return e.isEmpty() && e.text().isPresent();
+	}
+
+	/**
+	 * Opens an element, writing its attributes and text content.
+	 * @param e Element
+	 * @return New frame
+	 */
+	private Frame open(Element e) throws IOException {
+		// Group children by name
+		final Map<String, List<Element>> groups = new LinkedHashMap<>();
+		for(Element child : e.childList()) {
+			groups.computeIfAbsent(child.name(), __ -> new ArrayList<>()).add(child);
+		}
+		final Frame frame = new Frame(groups.entrySet().iterator());
+
+		// Write attributes
+		out.write('{');
+		for(var entry : e.attributes().entrySet()) {
+			member(frame, entry.getKey());
+			string(entry.getValue());
+		}
+
+		// Write text content
+		final Element.Content text = e.text();
+		if(text.isPresent()) {
+			member(frame, JsonLoader.TEXT);
+			string(text.toString());
+		}
+
+		return frame;
+	}
+
+	/**
+	 * Writes a member name.
+	 */
+	private void member(Frame frame, String name) throws IOException {
+		if(frame.members > 0) {
+			out.write(',');
+		}
+		++frame.members;
+		string(name);
+		out.write(':');
+	}
+
+	/**
+	 * Writes an escaped string.
+	 */
+	private void string(String str) throws IOException {
+		out.write('"');
+		int start = 0;
+		final int len = str.length();
+		for(int n = 0; n < len; ++n) {
+			final char c = str.charAt(n);
+			if((c >= 0x20) && (c != '"') && (c != '\\')) {
+				continue;
+			}
+			out.write(str, start, n - start);
+			switch(c) {
+				case '"' -> out.write("\\\"");
+				case '\\' -> out.write("\\\\");
+				case '\n' -> out.write("\\n");
+				case '\r' -> out.write("\\r");
+				case '\t' -> out.write("\\t");
+				default -> out.write(String.format("\\u%04x", (int) c));
+			}
+			start = n + 1;
+		}
+		out.write(str, start, len - start);
+		out.write('"');
+	}
+}
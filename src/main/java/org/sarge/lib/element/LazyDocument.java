@@ -0,0 +1,592 @@
+package org.sarge.lib.element;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.sarge.lib.element.Element.Contents;
+import org.sarge.lib.util.SymbolTable;
+
+/**
+ * A <i>lazy document</i> materialises the elements of an XML document on demand.
+ * <p>
+ * The document is first scanned to build a lightweight <i>offset index</i> comprising the position of each element within the buffer and the links to its first child and next sibling.
+ * The root element is initially <i>deferred</i>, the attributes, text content and children of an element are only decoded when that element is first accessed.
+ * Time-to-first-access and resident memory are therefore proportional to the parts of the document that are actually used.
+ * <p>
+ * Notes:
+ * <ul>
+ * <li>the document must be encoded as UTF-8 (or ASCII)</li>
+ * <li>only the predefined XML entities and character references are supported</li>
+ * <li>the structure of the document is validated when the index is built whereas the content of an element is validated when it is materialised</li>
+ * <li>the buffer must not be modified while the document is in use</li>
+ * </ul>
+ * <p>
+ * @see ElementLoader#lazy(java.nio.file.Path)
+ * @author Sarge
+ */
+class LazyDocument {
+	private static final int NONE = -1;
+
+	private final ByteBuffer buffer;
+	private final SymbolTable symbols;
+
+	// Offset index
+	private int count;
+	private int[] start = new int[256];
+	private int[] end = new int[256];
+	private int[] close = new int[256];
+	private int[] child = new int[256];
+	private int[] next = new int[256];
+
+	/**
+	 * Constructor.
+	 * @param buffer		Document buffer
+	 * @param symbols		Symbol table for element and attribute names
+	 * @throws IOException if the document is not well-formed
+	 */
+	LazyDocument(ByteBuffer buffer, SymbolTable symbols) throws IOException {
+		this.buffer = buffer;
+		this.symbols = symbols;
+		encoding();
+		index();
+	}
+
+	/**
+	 * @return Number of indexed elements
+	 */
+	int size() {
+		return count;
+	}
+
+	/**
+	 * @return Deferred root element
+	 */
+	Element root() {
+		return element(0);
+	}
+
+	/**
+	 * Creates a deferred element.
+	 * @param node Element index
+	 * @return Deferred element
+	 */
+	private Element element(int node) {
+		final int pos = start[node] + 1;
+		final String name = symbols.intern(string(pos, name(pos)));
+		return Element.deferred(name, () -> load(node));
+	}
+
+	/**
+	 * Creates an exception for an invalid document.
+	 */
+	private static IOException error(int pos, String message) {
+		return new IOException(String.format("Invalid XML at offset %d: %s", pos, message));
+	}
+
+	/**
+	 * @return Byte at the given position
+	 * @throws IOException if the position is beyond the end of the document
+	 */
+	private byte at(int pos) throws IOException {
+		if(pos >= buffer.limit()) throw error(pos, "Unexpected end of document");
+		return buffer.get(pos);
+	}
+
+	/**
+	 * @return Whether the document contains the given ASCII string at the given position
+	 */
+	private boolean matches(int pos, String str) {
+		if(pos + str.length() > buffer.limit()) {
+			return false;
+		}
+		for(int n = 0; n < str.length(); ++n) {
+			if(buffer.get(pos + n) != str.charAt(n)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the given ASCII string.
+	 * @param pos		Starting position
+	 * @param str		String to find
+	 * @return Position after the string
+	 * @throws IOException if the string is not present
+	 */
+	private int skip(int pos, String str) throws IOException {
+		final int limit = buffer.limit() - str.length();
+		final byte first = (byte) str.charAt(0);
+		for(int n = pos; n <= limit; ++n) {
+			if((buffer.get(n) == first) && matches(n, str)) {
+				return n + str.length();
+			}
+		}
+		throw error(pos, "Expected " + str);
+	}
+
+	/**
+	 * @return Whether the given byte is XML whitespace
+	 */
+	private static boolean isWhitespace(byte b) {
+		return (b == ' ') || (b == '\n') || (b == '\r') || (b == '\t');
+	}
+
+	/**
+	 * @return Position of the first non-whitespace byte
+	 */
+	private int whitespace(int pos) throws IOException {
+		while(isWhitespace(at(pos))) {
+			++pos;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return Position after the element or attribute name starting at the given position
+	 */
+	private int name(int pos) {
+		final int limit = buffer.limit();
+		int n = pos;
+		while(n < limit) {
+			final byte b = buffer.get(n);
+			if(isWhitespace(b) || (b == '=') || (b == '/') || (b == '>')) {
+				break;
+			}
+			++n;
+		}
+		return n;
+	}
+
+	/**
+	 * Decodes a UTF-8 string.
+	 * @param from		Start position
+	 * @param to		End position (exclusive)
+	 * @return String
+	 */
+	private String string(int from, int to) {
+		final byte[] bytes = new byte[to - from];
+		buffer.get(from, bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Checks the character encoding declared by the XML prolog.
+	 * @throws IOException if the document is not UTF-8 or ASCII
+	 */
+	private void encoding() throws IOException {
+		// Skip byte order mark
+		int pos = 0;
+		if((buffer.limit() >= 3) && (buffer.get(0) == (byte) 0xEF) && (buffer.get(1) == (byte) 0xBB) && (buffer.get(2) == (byte) 0xBF)) {
+			pos = 3;
+		}
+
+		// Extract declared encoding
+		if(!matches(pos, "<?xml")) {
+			return;
+		}
+		final String prolog = string(pos, skip(pos, "?>"));
+		final int index = prolog.indexOf("encoding");
+		if(index < 0) {
+			return;
+		}
+		final int quote = index + prolog.substring(index).indexOf('=') + 1;
+		final String encoding = prolog.substring(quote).trim().substring(1).split("[\"']")[0];
+
+		// Check encoding
+		if(!encoding.equalsIgnoreCase("UTF-8") && !encoding.equalsIgnoreCase("US-ASCII")) {
+			throw new IOException("Unsupported encoding for a lazy document: " + encoding);
+		}
+	}
+
+	/**
+	 * Builds the offset index of the document.
+	 * @throws IOException if the document is not well-formed
+	 */
+	private void index() throws IOException {
+		final int limit = buffer.limit();
+		int[] open = new int[64];
+		int[] last = new int[64];
+		int depth = 0;
+		int pos = 0;
+
+		while(true) {
+			// Find next tag
+			while((pos < limit) && (buffer.get(pos) != '<')) {
+				++pos;
+			}
+			if(pos == limit) {
+				break;
+			}
+			final int tag = pos;
+
+			switch(at(tag + 1)) {
+				case '?' -> pos = skip(tag, "?>");
+				case '!' -> pos = markup(tag);
+				case '/' -> {
+					// Close element
+					if(depth == 0) throw error(tag, "Unexpected end tag");
+					final int node = open[--depth];
+					if(!isEndTag(node, tag + 2)) throw error(tag, "Mismatched end tag");
+					end[node] = tag;
+					pos = skip(tag, ">");
+					close[node] = pos;
+				}
+				default -> {
+					// Add element
+					if((depth == 0) && (count > 0)) throw error(tag, "Multiple root elements");
+					final int node = add(tag);
+
+					// Link to parent
+					if(depth > 0) {
+						final int prev = last[depth - 1];
+						if(prev == NONE) {
+							child[open[depth - 1]] = node;
+						}
+						else {
+							next[prev] = node;
+						}
+						last[depth - 1] = node;
+					}
+
+					// Open element
+					pos = tag(tag);
+					if(buffer.get(pos - 2) == '/') {
+						close[node] = pos;
+					}
+					else {
+						if(depth == open.length) {
+							open = Arrays.copyOf(open, depth * 2);
+							last = Arrays.copyOf(last, depth * 2);
+						}
+						open[depth] = node;
+						last[depth] = NONE;
+						++depth;
+					}
+				}
+			}
+		}
+
+		if(depth > 0) throw error(limit, "Unclosed element");
+		if(count == 0) throw error(0, "No root element");
+	}
+
+	/**
+	 * Adds an element to the index.
+	 * @param tag Position of the start tag
+	 * @return Element index
+	 */
+	private int add(int tag) {
+		if(count == start.length) {
+			final int size = count * 2;
+			start = Arrays.copyOf(start, size);
+			end = Arrays.copyOf(end, size);
+			close = Arrays.copyOf(close, size);
+			child = Arrays.copyOf(child, size);
+			next = Arrays.copyOf(next, size);
+		}
+		start[count] = tag;
+		end[count] = NONE;
+		child[count] = NONE;
+		next[count] = NONE;
+		return count++;
+	}
+
+	/**
+	 * @return Whether the name of the given element matches the end tag name at the given position
+	 */
+	private boolean isEndTag(int node, int pos) {
+		final int from = start[node] + 1;
+		final int len = name(from) - from;
+		if(name(pos) - pos != len) {
+			return false;
+		}
+		for(int n = 0; n < len; ++n) {
+			if(buffer.get(from + n) != buffer.get(pos + n)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Skips a start tag.
+	 * @param tag Position of the start tag
+	 * @return Position after the tag
+	 */
+	private int tag(int tag) throws IOException {
+		int pos = tag + 1;
+		while(true) {
+			final byte b = at(pos);
+			if((b == '"') || (b == '\'')) {
+				pos = skip(pos + 1, String.valueOf((char) b));
+			}
+			else
+			if(b == '>') {
+				return pos + 1;
+			}
+			else {
+				++pos;
+			}
+		}
+	}
+
+	/**
+	 * Skips a comment, CDATA section or document type declaration.
+	 * @param tag Position of the markup
+	 * @return Position after the markup
+	 */
+	private int markup(int tag) throws IOException {
+		if(matches(tag, "<!--")) {
+			return skip(tag + 4, "-->");
+		}
+		else
+		if(matches(tag, "<![CDATA[")) {
+			return skip(tag + 9, "]]>");
+		}
+		else {
+			// Skip declaration including any internal subset
+			int depth = 0;
+			int pos = tag + 2;
+			while(true) {
+				final byte b = at(pos++);
+				if(b == '[') {
+					++depth;
+				}
+				else
+				if(b == ']') {
+					--depth;
+				}
+				else
+				if((b == '>') && (depth == 0)) {
+					return pos;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Materialises the contents of an element.
+	 * @param node Element index
+	 * @return Contents
+	 * @throws IOException if the element is not valid
+	 */
+	private Contents load(int node) throws IOException {
+		// Load attributes
+		final Map<String, String> attributes = new HashMap<>();
+		int pos = name(start[node] + 1);
+		while(true) {
+			pos = whitespace(pos);
+			final byte b = at(pos);
+			if((b == '/') || (b == '>')) {
+				break;
+			}
+
+			final int from = pos;
+			pos = name(pos);
+			if(pos == from) throw error(pos, "Expected attribute name");
+			final String name = symbols.intern(string(from, pos));
+
+			pos = whitespace(pos);
+			if(at(pos) != '=') throw error(pos, "Expected attribute value");
+			pos = whitespace(pos + 1);
+			final byte quote = at(pos);
+			if((quote != '"') && (quote != '\'')) throw error(pos, "Expected quoted attribute value");
+			final int to = skip(pos + 1, String.valueOf((char) quote)) - 1;
+			attributes.put(name, decode(pos + 1, to, true));
+			pos = to + 1;
+		}
+
+		// Stop at empty element
+		if(end[node] == NONE) {
+			return new Contents(attributes, null, List.of());
+		}
+
+		// Load children and text content
+		final List<Element> children = new ArrayList<>();
+		String text = null;
+		int from = skip(pos, ">");
+		for(int c = child[node]; c != NONE; c = next[c]) {
+			text = text(from, start[c], text);
+			children.add(element(c));
+			from = close[c];
+		}
+		text = text(from, end[node], text);
+
+		return new Contents(attributes, text, children);
+	}
+
+	/**
+	 * Decodes a segment of text content.
+	 * Consistent with {@link ElementLoader} the text is trimmed and the last non-empty segment of mixed content is retained.
+	 * @param from		Start position
+	 * @param to		End position
+	 * @param prev		Previous text content
+	 * @return Text content
+	 */
+	private String text(int from, int to, String prev) throws IOException {
+		if(from == to) {
+			return prev;
+		}
+		final String text = decode(from, to, false).trim();
+		if(text.isEmpty()) {
+			return prev;
+		}
+		else {
+			return text;
+		}
+	}
+
+	/**
+	 * Decodes character data, replacing entities and normalising line endings.
+	 * Attribute values additionally have whitespace characters replaced by spaces.
+	 * Text content can contain CDATA sections, comments and processing instructions.
+	 * @param from			Start position
+	 * @param to			End position
+	 * @param attribute		Whether decoding an attribute value
+	 * @return Decoded string
+	 */
+	private String decode(int from, int to, boolean attribute) throws IOException {
+		// Decoding never expands the data
+		final byte[] out = new byte[to - from];
+		int len = 0;
+		int pos = from;
+
+		while(pos < to) {
+			final byte b = buffer.get(pos);
+			if(b == '&') {
+				// Replace entity
+				final int semi = skip(pos, ";") - 1;
+				if(semi >= to) throw error(pos, "Unterminated entity");
+				len = encode(entity(pos + 1, semi), out, len);
+				pos = semi + 1;
+			}
+			else
+			if(b == '<') {
+				if(attribute) throw error(pos, "Invalid character in attribute value");
+				if(matches(pos, "<![CDATA[")) {
+					// Copy CDATA section
+					final int end = skip(pos + 9, "]]>") - 3;
+					buffer.get(pos + 9, out, len, end - pos - 9);
+					len += end - pos - 9;
+					pos = end + 3;
+				}
+				else
+				if(matches(pos, "<!--")) {
+					pos = skip(pos + 4, "-->");
+				}
+				else
+				if(matches(pos, "<?")) {
+					pos = skip(pos + 2, "?>");
+				}
+				else {
+					throw error(pos, "Unexpected markup");
+				}
+			}
+			else
+			if(b == '\r') {
+				// Normalise line ending
+				if((pos + 1 == to) || (buffer.get(pos + 1) != '\n')) {
+					if(attribute) {
+						out[len++] = ' ';
+					}
+					else {
+						out[len++] = '\n';
+					}
+				}
+				++pos;
+			}
+			else
+			if(attribute && ((b == '\n') || (b == '\t'))) {
+				out[len++] = ' ';
+				++pos;
+			}
+			else {
+				out[len++] = b;
+				++pos;
+			}
+		}
+
+		return new String(out, 0, len, UTF_8);
+	}
+
+	/**
+	 * Decodes an entity or character reference.
+	 * @param from		Start of the entity name
+	 * @param to		Position of the terminating semi-colon
+	 * @return Character code-point
+	 */
+	private int entity(int from, int to) throws IOException {
+		final String name = string(from, to);
+		return switch(name) {
+			case "lt" -> '<';
+			case "gt" -> '>';
+			case "amp" -> '&';
+			case "quot" -> '"';
+			case "apos" -> '\'';
+			default -> reference(from, name);
+		};
+	}
+
+	/**
+	 * Decodes a character reference.
+	 * @param from		Start of the reference
+	 * @param name		Reference
+	 * @return Character code-point
+	 */
+	private static int reference(int from, String name) throws IOException {
+		if(name.startsWith("#")) {
+			try {
+				final int code;
+				if(name.startsWith("#x")) {
+					code = Integer.parseInt(name.substring(2), 16);
+				}
+				else {
+					code = Integer.parseInt(name.substring(1));
+				}
+				if(Character.isValidCodePoint(code)) {
+					return code;
+				}
+			}
+			catch(NumberFormatException e) {
+				// Fall through
+			}
+		}
+
+		throw error(from, "Unknown entity: " + name);
+	}
+
+	/**
+	 * Encodes a code-point as UTF-8.
+	 * @param code		Code-point
+	 * @param out		Output
+	 * @param len		Current length
+	 * @return New length
+	 */
+	private static int encode(int code, byte[] out, int len) {
+		if(code < 0x80) {
+			out[len++] = (byte) code;
+		}
+		else
+		if(code < 0x800) {
+			out[len++] = (byte) (0xC0 | (code >> 6));
+			out[len++] = (byte) (0x80 | (code & 0x3F));
+		}
+		else
+		if(code < 0x10000) {
+			out[len++] = (byte) (0xE0 | (code >> 12));
+			out[len++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+			out[len++] = (byte) (0x80 | (code & 0x3F));
+		}
+		else {
+			out[len++] = (byte) (0xF0 | (code >> 18));
+			out[len++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+			out[len++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+			out[len++] = (byte) (0x80 | (code & 0x3F));
+		}
+		return len;
+	}
+}
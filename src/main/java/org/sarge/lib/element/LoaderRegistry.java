@@ -2,17 +2,30 @@ package org.sarge.lib.element;
 
 import java.util.*;
 import java.util.function.Function;
+import java.util.stream.*;
 
 import org.sarge.lib.element.Element.ElementException;
 import org.sarge.lib.util.Check;
 
 /**
  * A <i>loader registry</i> maps an element to a loader by name.
+ * <p>
+ * A registry is not thread-safe, use {@link #compile()} to create an immutable dispatcher that can be shared across threads.
+ * <p>
+ * A registry can optionally <i>memoize</i> the loaded results by the structural identity of the element, see {@link #memoize(int)}.
+ * <p>
  * @param <T> Loaded type
  * @author Sarge
  */
 public class LoaderRegistry<T> {
+	/**
+	 * Default number of elements below which a batch is loaded sequentially.
+	 */
+	public static final int DEFAULT_THRESHOLD = 256;
+
 	private final Map<String, Function<Element, T>> loaders = new HashMap<>();
+	private int threshold = DEFAULT_THRESHOLD;
+	private Memo<T> memo;
 
 	public LoaderRegistry() {
 		init();
@@ -89,11 +102,110 @@ public class LoaderRegistry<T> {
 	 * @see #register(String, Function)
 	 */
 	public T load(Element e) {
-		// Lookup loader
-		final Function<Element, T> loader = loaders.get(e.name());
-		if(loader == null) throw e.exception("Unknown loader: " + e.name());
+		return load(loaders.get(e.name()), e, memo);
+	}
+
+	/**
+	 * Loads an object without throwing an exception on failure.
+	 * <p>
+	 * This method is intended for probing optional or invalid data in bulk, in which case stack traces should generally also be disabled, see {@link Element#stackTraces(boolean)}.
+	 * <p>
+	 * @param e Element
+	 * @return Result
+	 * @see #load(Element)
+	 */
+	public Result<T> tryLoad(Element e) {
+		try {
+			return Result.of(load(e));
+		}
+		catch(ElementException ex) {
+			return Result.failed(ex);
+		}
+	}
+
+	/**
+	 * A <i>result</i> is the outcome of loading an element, i.e. either the loaded object or the failure.
+	 * @param <T> Loaded type
+	 * @param value		Loaded object
+	 * @param error		Failure or {@code null} if successful
+	 * @see LoaderRegistry#tryLoad(Element)
+	 */
+	public record Result<T>(T value, ElementException error) {
+		/**
+		 * Creates a successful result.
+		 * @param <T> Loaded type
+		 * @param value Loaded object
+		 * @return Successful result
+		 */
+		public static <T> Result<T> of(T value) {
+			return new Result<>(value, null);
+		}
+
+		/**
+		 * Creates a failed result.
+		 * @param <T> Loaded type
+		 * @param error Failure
+		 * @return Failed result
+		 */
+		public static <T> Result<T> failed(ElementException error) {
+			return new Result<>(null, Check.notNull(error));
+		}
+
+		/**
+		 * @return Whether the element was loaded successfully
+		 */
+		public boolean isSuccess() {
+			return error == null;
+		}
+
+		/**
+		 * @param other Alternative value
+		 * @return Loaded object or the given alternative if failed
+		 */
+		public T orElse(T other) {
+			if(error == null) {
+				return value;
+			}
+			else {
+				return other;
+			}
+		}
+
+		/**
+		 * @return Loaded object
+		 * @throws ElementException if failed
+		 */
+		public T orElseThrow() {
+			if(error != null) throw error;
+			return value;
+		}
+	}
+
+	/**
+	 * Delegates to the given loader via the memoized results if enabled.
+	 * @param loader		Loader or {@code null} if not registered
+	 * @param e				Element
+	 * @param memo			Memoized results or {@code null} if disabled
+	 * @return Result
+	 */
+	private static <T> T load(Function<Element, T> loader, Element e, Memo<T> memo) {
+		if(memo == null) {
+			return apply(loader, e);
+		}
+		else {
+			return memo.load(loader, e);
+		}
+	}
 
-		// Delegate
+	/**
+	 * Delegates to the given loader.
+	 * @param loader		Loader or {@code null} if not registered
+	 * @param e				Element
+	 * @return Result
+	 * @throws ElementException if the loader is not present or the object cannot be loaded
+	 */
+	private static <T> T apply(Function<Element, T> loader, Element e) {
+		if(loader == null) throw e.exception("Unknown loader: " + e.name());
 		try {
 			return loader.apply(e);
 		}
@@ -101,4 +213,362 @@ public class LoaderRegistry<T> {
 			throw e.new ElementException(ex);
 		}
 	}
+
+	/**
+	 * Enables or disables the memoizing mode of this registry.
+	 * <p>
+	 * In memoizing mode the loaded results are cached by the <i>structural identity</i> of the element, i.e. the name, attributes, text content and children but not the parent or location, see {@link Element#equals(Object)}.
+	 * Loading an element that is identical to a previously loaded element returns the <b>same</b> result instance, e.g. for shared definitions that are repeated throughout a document.
+	 * The cache is bounded to the given number of entries and discards the least recently used result when full.
+	 * <p>
+	 * Notes:
+	 * <ul>
+	 * <li>memoizing should only be enabled if the registered loaders depend solely on the contents of the element (and not its location or parent)</li>
+	 * <li>the loaded objects are shared and should therefore be immutable</li>
+	 * <li>{@code null} results and failures are not cached</li>
+	 * <li>a cached element retains the document that contains it</li>
+	 * <li>the cache is shared by any dispatcher compiled from this registry, see {@link #compile()}</li>
+	 * </ul>
+	 * <p>
+	 * @param size Maximum number of cached results or zero to disable memoizing
+	 */
+	public LoaderRegistry<T> memoize(int size) {
+		Check.zeroOrMore(size);
+		if(size == 0) {
+			memo = null;
+		}
+		else {
+			memo = new Memo<>(size);
+		}
+		return this;
+	}
+
+	/**
+	 * Bounded cache of loaded results indexed by structural identity.
+	 */
+	private static final class Memo<T> {
+		private final Map<Element, T> cache;
+
+		/**
+		 * Constructor.
+		 * @param size Maximum number of cached results
+		 */
+		Memo(int size) {
+			this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Element, T> eldest) {
+					return size() > size;
+				}
+			};
+		}
+
+		/**
+		 * Loads an element or returns the cached result for an identical element.
+		 * The loader is invoked outside of the lock, if two identical elements are loaded concurrently the first result to be cached is returned to both.
+		 * @param loader		Loader
+		 * @param e				Element
+		 * @return Result
+		 */
+		T load(Function<Element, T> loader, Element e) {
+			// Lookup cached result
+			synchronized(cache) {
+				final T prev = cache.get(e);
+				if(prev != null) {
+					return prev;
+				}
+			}
+
+			// Otherwise load and cache result
+			final T result = apply(loader, e);
+			if(result == null) {
+				return null;
+			}
+			synchronized(cache) {
+				final T prev = cache.putIfAbsent(e, result);
+				if(prev == null) {
+					return result;
+				}
+				else {
+					return prev;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of elements below which a batch is loaded sequentially.
+	 * @param threshold Sequential threshold
+	 * @see #loadAll(Stream)
+	 */
+	public LoaderRegistry<T> threshold(int threshold) {
+		this.threshold = Check.oneOrMore(threshold);
+		return this;
+	}
+
+	/**
+	 * Loads a batch of elements in parallel.
+	 * <p>
+	 * The elements are loaded using a parallel stream (i.e. on the fork-join pool of the calling task or the common pool) unless the batch is smaller than the configured threshold, see {@link #threshold(int)}.
+	 * The registry is compiled to a {@link Dispatcher} for the duration of the batch.
+	 * <p>
+	 * Loading continues after a failure, all failures are aggregated into a single {@link LoadException} in document order.
+	 * <p>
+	 * @param elements Elements to load
+	 * @return Results in the same order as the given elements
+	 * @throws LoadException if any element cannot be loaded
+	 */
+	public List<T> loadAll(Stream<Element> elements) {
+		return loadAll(elements.toList());
+	}
+
+	/**
+	 * Loads the children of the given element in parallel.
+	 * @param parent Parent element
+	 * @return Results in document order
+	 * @throws LoadException if any child cannot be loaded
+	 * @see #loadAll(Stream)
+	 */
+	public List<T> loadChildren(Element parent) {
+		return loadAll(parent.childList());
+	}
+
+	/**
+	 * Loads a batch of elements.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<T> loadAll(List<Element> elements) {
+		// Load elements capturing failures
+		final int size = elements.size();
+		final Dispatcher<T> dispatcher = compile();
+		final T[] results = (T[]) new Object[size];
+		final ElementException[] errors = new ElementException[size];
+		IntStream range = IntStream.range(0, size);
+		if(size >= threshold) {
+			range = range.parallel();
+		}
+		range.forEach(n -> {
+			try {
+				results[n] = dispatcher.apply(elements.get(n));
+			}
+			catch(ElementException e) {
+				errors[n] = e;
+			}
+		});
+
+		// Aggregate failures
+		final List<ElementException> failures = Arrays.stream(errors).filter(Objects::nonNull).toList();
+		if(!failures.isEmpty()) {
+			throw new LoadException(failures);
+		}
+
+		return Collections.unmodifiableList(Arrays.asList(results));
+	}
+
+	/**
+	 * A <i>load exception</i> aggregates the failures of a batch of elements.
+	 * @see LoaderRegistry#loadAll(Stream)
+	 */
+	public static class LoadException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Maximum number of failures included in the exception message.
+		 */
+		public static final int MAX_MESSAGES = 5;
+
+		private final transient List<ElementException> errors;
+		private String message;
+
+		/**
+		 * Constructor.
+		 * @param errors Element failures in document order
+		 */
+		public LoadException(List<ElementException> errors) {
+			this.errors = List.copyOf(errors);
+			for(ElementException e : errors) {
+				addSuppressed(e);
+			}
+		}
+
+		/**
+		 * The summary message is only built when first requested and is limited to the first {@link #MAX_MESSAGES} failures.
+		 */
+		@Override
+		public String getMessage() {
+			if((message == null) && (errors != null)) {
+				final StringBuilder str = new StringBuilder();
+				str.append(errors.size()).append(" element(s) could not be loaded");
+				final int count = Math.min(errors.size(), MAX_MESSAGES);
+				for(int n = 0; n < count; ++n) {
+					str.append("\n").append(errors.get(n).getMessage());
+				}
+				if(errors.size() > count) {
+					str.append("\n... and ").append(errors.size() - count).append(" more");
+				}
+				message = str.toString();
+			}
+			return message;
+		}
+
+		/**
+		 * @return Element failures in document order
+		 */
+		public List<ElementException> errors() {
+			return errors;
+		}
+	}
+
+	/**
+	 * Compiles this registry to an immutable dispatcher.
+	 * Subsequent changes to this registry do not affect the dispatcher.
+	 * @return Dispatcher
+	 */
+	public Dispatcher<T> compile() {
+		return new Dispatcher<>(loaders, memo);
+	}
+
+	/**
+	 * A <i>dispatcher</i> is an immutable, compiled loader registry that can be safely shared across threads without locking.
+	 * <p>
+	 * The loaders are stored in an open-addressing table indexed by the cached hash of the element name.
+	 * Element names are generally canonicalised by a {@link org.sarge.lib.util.SymbolTable} in which case the name comparison is an identity check.
+	 * <p>
+	 * Note that a dispatcher compiled from a memoizing registry shares (and synchronises on) the cache of that registry.
+	 * <p>
+	 * @param <T> Loaded type
+	 */
+	public static final class Dispatcher<T> implements Function<Element, T> {
+		private final String[] names;
+		private final Function<Element, T>[] loaders;
+		private final int mask;
+		private final Memo<T> memo;
+
+		/**
+		 * Constructor.
+		 * @param map		Loaders indexed by name
+		 * @param memo		Memoized results or {@code null} if disabled
+		 */
+		@SuppressWarnings("unchecked")
+		private Dispatcher(Map<String, Function<Element, T>> map, Memo<T> memo) {
+			// Size table to a load factor of at most one half
+			final int size = Integer.highestOneBit(Math.max(1, map.size()) * 2) * 2;
+			this.names = new String[size];
+			this.loaders = (Function<Element, T>[]) new Function<?, ?>[size];
+			this.mask = size - 1;
+			this.memo = memo;
+
+			// Populate table
+			for(Map.Entry<String, Function<Element, T>> entry : map.entrySet()) {
+				final String name = entry.getKey();
+				int index = name.hashCode() & mask;
+				while(names[index] != null) {
+					index = (index + 1) & mask;
+				}
+				names[index] = name;
+				loaders[index] = entry.getValue();
+			}
+		}
+
+		/**
+		 * Looks up the loader for the given element name.
+		 * @param name Element name
+		 * @return Loader or {@code null} if not present
+		 */
+		private Function<Element, T> find(String name) {
+			int index = name.hashCode() & mask;
+			while(true) {
+				final String key = names[index];
+				if(key == null) {
+					return null;
+				}
+				if(key.equals(name)) {
+					return loaders[index];
+				}
+				index = (index + 1) & mask;
+			}
+		}
+
+		/**
+		 * @param name Element name
+		 * @return Whether this dispatcher has a loader for the given element name
+		 */
+		public boolean contains(String name) {
+			return find(name) != null;
+		}
+
+		/**
+		 * Loads an object by delegating to the loader with the {@link Element#name()}.
+		 * @param e Element
+		 * @return Result
+		 * @throws ElementException if a loader with the element name is not present or the object cannot be loaded
+		 * @see LoaderRegistry#load(Element)
+		 */
+		@Override
+		public T apply(Element e) {
+			return load(find(e.name()), e, memo);
+		}
+	}
+
+	/**
+	 * Incrementally reloads the children of a document that has been modified.
+	 * <p>
+	 * The given results are the objects previously loaded from the children of the original document (in order).
+	 * The two versions of the document are compared using an {@link ElementDiff} and only those children containing a change are reloaded, the results for unchanged children are reused.
+	 * The entire document is reloaded if the root element itself has changed.
+	 * <p>
+	 * @param before		Original document
+	 * @param after			Updated document
+	 * @param results		Results loaded from the children of the original document
+	 * @return Results for the children of the updated document
+	 * @throws IllegalArgumentException if the number of results does not match the original document
+	 * @throws ElementException if a child cannot be loaded
+	 * @see ElementDiff#compare(Element, Element)
+	 */
+	public List<T> reload(Element before, Element after, List<T> results) {
+		if(results.size() != before.size()) throw new IllegalArgumentException("Results do not match the original document");
+
+		// Determine modified children
+		final Set<Element> modified = Collections.newSetFromMap(new IdentityHashMap<>());
+		for(ElementDiff.Change change : ElementDiff.compare(before, after)) {
+			final Element e = change.element();
+			if((e == before) || (e == after)) {
+				// Reload all children if the root has changed
+				return after.children().map(this::load).toList();
+			}
+			modified.add(child(e, before, after));
+		}
+
+		// Index previous results
+		final Map<Element, T> previous = new IdentityHashMap<>();
+		for(int n = 0; n < results.size(); ++n) {
+			previous.put(before.childList().get(n), results.get(n));
+		}
+
+		// Reload modified children
+		final List<T> list = new ArrayList<>(after.size());
+		for(Element child : after.childList()) {
+			final Element prev = ElementDiff.counterpart(child, before);
+			if((prev == null) || modified.contains(child) || modified.contains(prev)) {
+				list.add(load(child));
+			}
+			else {
+				list.add(previous.get(prev));
+			}
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * @return Ancestor of the given element that is a child of either version of the document
+	 */
+	private static Element child(Element e, Element before, Element after) {
+		Element child = e;
+		while(true) {
+			final Element parent = child.parent().orElseThrow();
+			if((parent == before) || (parent == after)) {
+				return child;
+			}
+			child = parent;
+		}
+	}
 }
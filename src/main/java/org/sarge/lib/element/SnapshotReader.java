@@ -0,0 +1,187 @@
+package org.sarge.lib.element;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * The <i>snapshot reader</i> loads an element tree from a binary snapshot.
+ * <p>
+ * The tree is constructed iteratively and therefore deep documents cannot overflow the call stack.
+ * <p>
+ * @see SnapshotWriter
+ * @author Sarge
+ */
+public class SnapshotReader {
+	/**
+	 * Maximum number of entries or bytes allocated in advance of reading, so that a corrupt count cannot exhaust the heap.
+	 */
+	private static final int MAX_ALLOCATION = 1 << 16;
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[1 << 16];
+	private int pos, limit;
+	private String[] table;
+
+	/**
+	 * Constructor.
+	 * @param in Input stream
+	 */
+	public SnapshotReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Reads a snapshot.
+	 * @return Root element
+	 * @throws IOException if the snapshot cannot be read or is not a valid snapshot
+	 */
+	public Element read() throws IOException {
+		// Check header
+		final int magic = (next() << 24) | (next() << 16) | (next() << 8) | next();
+		if(magic != SnapshotWriter.MAGIC) throw new IOException("Invalid snapshot header");
+		final int version = next();
+		if(version != SnapshotWriter.VERSION) throw new IOException("Unsupported snapshot version: " + version);
+
+		// Load string table
+		final int size = varint();
+		table = new String[Math.min(size, MAX_ALLOCATION)];
+		for(int n = 0; n < size; ++n) {
+			if(n == table.length) {
+				table = Arrays.copyOf(table, (int) Math.min(size, n * 2L));
+			}
+			table[n] = string(varint());
+		}
+
+		// Load root element
+		final TreeBuilder builder = new TreeBuilder();
+		int[] remaining = new int[16];
+		int depth = 0;
+		remaining[0] = element(builder);
+
+		// Load tree
+		while(true) {
+			if(remaining[depth] == 0) {
+				// Complete element
+				builder.pop();
+				if(depth == 0) {
+					break;
+				}
+				--depth;
+			}
+			else {
+				// Start next child element
+				--remaining[depth];
+				++depth;
+				if(depth == remaining.length) {
+					remaining = Arrays.copyOf(remaining, depth * 2);
+				}
+				remaining[depth] = element(builder);
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Reads an element.
+	 * @param builder Tree builder
+	 * @return Number of children
+	 */
+	private int element(TreeBuilder builder) throws IOException {
+		// Load name
+		builder.push(lookup());
+
+		// Load attributes
+		final int count = varint();
+		for(int n = 0; n < count; ++n) {
+			builder.attribute(lookup(), lookup());
+		}
+
+		// Load text content
+		final int len = varint();
+		if(len > 0) {
+			builder.text(string(len - 1));
+		}
+
+		return varint();
+	}
+
+	/**
+	 * Looks up an entry in the string table.
+	 */
+	private String lookup() throws IOException {
+		final int index = varint();
+		if(index >= table.length) throw new IOException("Invalid string table index: " + index);
+		return table[index];
+	}
+
+	/**
+	 * Reads a UTF-8 string.
+	 * @param len Length (bytes)
+	 */
+	private String string(int len) throws IOException {
+		// Decode directly from the buffer if possible
+		if(limit - pos >= len) {
+			final String str = new String(buffer, pos, len, StandardCharsets.UTF_8);
+			pos += len;
+			return str;
+		}
+
+		// Otherwise copy across buffer boundaries
+		byte[] bytes = new byte[Math.min(len, MAX_ALLOCATION)];
+		int offset = 0;
+		while(offset < len) {
+			if(pos == limit) {
+				fill();
+			}
+			if(offset == bytes.length) {
+				bytes = Arrays.copyOf(bytes, (int) Math.min(len, offset * 2L));
+			}
+			final int count = Math.min(bytes.length - offset, limit - pos);
+			System.arraycopy(buffer, pos, bytes, offset, count);
+			pos += count;
+			offset += count;
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the next byte.
+	 */
+	private int next() throws IOException {
+		if(pos == limit) {
+			fill();
+		}
+		return buffer[pos++] & 0xFF;
+	}
+
+	/**
+	 * Refills the buffer.
+	 * @throws EOFException if the end of the stream has been reached
+	 */
+	private void fill() throws IOException {
+		final int count = in.read(buffer);
+		if(count <= 0) throw new EOFException("Unexpected end of snapshot");
+		pos = 0;
+		limit = count;
+	}
+
+	/**
+	 * Reads an unsigned variable-length integer, i.e. a count, string table index or length.
+	 * @throws IOException if the integer is malformed or negative
+	 */
+	private int varint() throws IOException {
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7) {
+			final int b = next();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				if(value < 0) throw new IOException("Invalid variable-length integer: " + Integer.toUnsignedString(value));
+				return value;
+			}
+		}
+		throw new IOException("Invalid variable-length integer");
+	}
+}
@@ -0,0 +1,154 @@
+package org.sarge.lib.element;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The <i>snapshot writer</i> persists an element tree in a compact binary format that can be reloaded much faster than parsing the source document.
+ * <p>
+ * The snapshot format is comprised of:
+ * <ol>
+ * <li>a header containing the {@link #MAGIC} number and format {@link #VERSION}</li>
+ * <li>a string table of the element names, attribute names and attribute values</li>
+ * <li>the element tree in depth-first order</li>
+ * </ol>
+ * <p>
+ * Each element is encoded as:
+ * <ul>
+ * <li>the string table index of the element name</li>
+ * <li>the number of attributes followed by the string table indices of each name-value pair</li>
+ * <li>the length of the text content plus one (or zero if none) followed by the UTF-8 encoded text</li>
+ * <li>the number of children</li>
+ * </ul>
+ * <p>
+ * All integers are encoded as unsigned variable-length integers (7 bits per byte, least significant group first).
+ * Strings are encoded as the length of the UTF-8 representation followed by the bytes.
+ * <p>
+ * @see SnapshotReader
+ * @author Sarge
+ */
+public class SnapshotWriter {
+	/**
+	 * Magic number identifying a snapshot.
+	 */
+	public static final int MAGIC = 0x454C4D54;
+
+	/**
+	 * Snapshot format version.
+	 */
+	public static final int VERSION = 1;
+
+	private final DataOutputStream out;
+
+	/**
+	 * Constructor.
+	 * @param out Output stream
+	 */
+	public SnapshotWriter(OutputStream out) {
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+	}
+
+	/**
+	 * Writes a snapshot of the given element tree.
+	 * @param root Root element
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void write(Element root) throws IOException {
+		// Write header
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+
+		// Build and write string table
+		final Map<String, Integer> table = table(root);
+		varint(table.size());
+		for(String str : table.keySet()) {
+			string(str);
+		}
+
+		// Write tree
+		final Deque<Element> stack = new ArrayDeque<>();
+		stack.push(root);
+		while(!stack.isEmpty()) {
+			// Write element
+			final Element e = stack.pop();
+			varint(table.get(e.name()));
+
+			// Write attributes
+			final Map<String, String> attributes = e.attributes();
+			varint(attributes.size());
+			for(var entry : attributes.entrySet()) {
+				varint(table.get(entry.getKey()));
+				varint(table.get(entry.getValue()));
+			}
+
+			// Write text content
+			final Element.Content text = e.text();
+			if(text.isPresent()) {
+				final byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+				varint(bytes.length + 1);
+				out.write(bytes);
+			}
+			else {
+				varint(0);
+			}
+
+			// Write children
+			final List<Element> children = e.childList();
+			varint(children.size());
+			for(int n = children.size() - 1; n >= 0; --n) {
+				stack.push(children.get(n));
+			}
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * Builds the string table for the given tree.
+	 * @param root Root element
+	 * @return String table
+	 */
+	private static Map<String, Integer> table(Element root) {
+		final Map<String, Integer> table = new LinkedHashMap<>();
+		final Deque<Element> stack = new ArrayDeque<>();
+		stack.push(root);
+		while(!stack.isEmpty()) {
+			final Element e = stack.pop();
+			add(e.name(), table);
+			for(var entry : e.attributes().entrySet()) {
+				add(entry.getKey(), table);
+				add(entry.getValue(), table);
+			}
+			stack.addAll(e.childList());
+		}
+		return table;
+	}
+
+	/**
+	 * Adds a string to the string table.
+	 */
+	private static void add(String str, Map<String, Integer> table) {
+		table.putIfAbsent(str, table.size());
+	}
+
+	/**
+	 * Writes a length-prefixed UTF-8 string.
+	 */
+	private void string(String str) throws IOException {
+		final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		varint(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Writes an unsigned variable-length integer.
+	 */
+	private void varint(int value) throws IOException {
+		while((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+}
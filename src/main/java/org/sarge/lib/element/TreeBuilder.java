@@ -0,0 +1,220 @@
+package org.sarge.lib.element;
+
+import static org.sarge.lib.util.Check.*;
+
+import java.util.Arrays;
+
+import org.sarge.lib.util.SymbolTable;
+
+/**
+ * A <i>tree builder</i> is a reusable arena for the bulk construction of element trees.
+ * <p>
+ * Elements are constructed depth-first using a push/pop interface:
+ * <p>
+ * <pre>
+ * TreeBuilder builder = new TreeBuilder();
+ * Element root = builder
+ *     .push("parent")
+ *     .attribute("attribute", "value")
+ *         .push("child")
+ *         .text("text")
+ *         .pop()
+ *     .pop()
+ *     .build();
+ * </pre>
+ * <p>
+ * Unlike {@link Element.Builder} which allocates a map and a list for every element, the attributes and children of all open elements are accumulated in shared scratch buffers that are reused across elements and trees.
+ * Only the final compact element is allocated when an element is popped.
+ * <p>
+ * A tree builder is not thread-safe.
+ * <p>
+ * @author Sarge
+ */
+public final class TreeBuilder {
+	private static final Element[] EMPTY = new Element[0];
+
+	private final SymbolTable symbols;
+
+	// Open elements
+	private int depth;
+	private String[] names = new String[16];
+	private String[] texts = new String[16];
+	private int[] attributeStart = new int[16];
+	private int[] childStart = new int[16];
+
+	// Scratch buffers
+	private String[] attributes = new String[32];
+	private int attributeCount;
+	private Element[] children = new Element[64];
+	private int childCount;
+
+	// Completed tree
+	private Element root;
+
+	/**
+	 * Constructor.
+	 * @param symbols Symbol table used to canonicalise element and attribute names
+	 */
+	public TreeBuilder(SymbolTable symbols) {
+		this.symbols = notNull(symbols);
+	}
+
+	/**
+	 * Default constructor.
+	 */
+	public TreeBuilder() {
+		this(SymbolTable.NONE);
+	}
+
+	/**
+	 * @return Number of open elements
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * @throws IllegalStateException if there is no open element
+	 */
+	private void check() {
+		if(depth == 0) throw new IllegalStateException("No open element");
+	}
+
+	/**
+	 * Starts a new element, which is a child of the current element if any.
+	 * @param name Element name
+	 * @throws IllegalStateException if the tree has already been completed
+	 */
+	public TreeBuilder push(String name) {
+		if(root != null) throw new IllegalStateException("Tree has already been completed");
+		notEmpty(name);
+
+		if(depth == names.length) {
+			final int size = depth * 2;
+			names = Arrays.copyOf(names, size);
+			texts = Arrays.copyOf(texts, size);
+			attributeStart = Arrays.copyOf(attributeStart, size);
+			childStart = Arrays.copyOf(childStart, size);
+		}
+
+		names[depth] = symbols.intern(name);
+		texts[depth] = null;
+		attributeStart[depth] = attributeCount;
+		childStart[depth] = childCount;
+		++depth;
+
+		return this;
+	}
+
+	/**
+	 * Adds an attribute to the current element, replacing any existing attribute with the same name.
+	 * @param name		Attribute name
+	 * @param value		Value
+	 * @throws IllegalStateException if there is no open element
+	 */
+	public TreeBuilder attribute(String name, String value) {
+		check();
+		notEmpty(name);
+		notNull(value);
+
+		// Replace duplicate attribute
+		final String key = symbols.intern(name);
+		for(int n = attributeStart[depth - 1]; n < attributeCount; n += 2) {
+			if(attributes[n].equals(key)) {
+				attributes[n + 1] = value;
+				return this;
+			}
+		}
+
+		// Otherwise add attribute
+		if(attributeCount + 2 > attributes.length) {
+			attributes = Arrays.copyOf(attributes, attributes.length * 2);
+		}
+		attributes[attributeCount++] = key;
+		attributes[attributeCount++] = value;
+
+		return this;
+	}
+
+	/**
+	 * Sets the text content of the current element.
+	 * @param text Text content (which can be empty)
+	 * @throws IllegalStateException if there is no open element
+	 */
+	public TreeBuilder text(String text) {
+		check();
+		texts[depth - 1] = notNull(text);
+		return this;
+	}
+
+	/**
+	 * Completes the current element.
+	 * @throws IllegalStateException if there is no open element
+	 */
+	public TreeBuilder pop() {
+		check();
+		--depth;
+
+		// Build compact attributes
+		final int attributeFrom = attributeStart[depth];
+		final var map = AttributeMap.of(attributes, attributeFrom, attributeCount);
+		Arrays.fill(attributes, attributeFrom, attributeCount, null);
+		attributeCount = attributeFrom;
+
+		// Build exactly sized children
+		final int childFrom = childStart[depth];
+		final Element[] array;
+		if(childCount == childFrom) {
+			array = EMPTY;
+		}
+		else {
+			array = Arrays.copyOfRange(children, childFrom, childCount);
+			Arrays.fill(children, childFrom, childCount, null);
+			childCount = childFrom;
+		}
+
+		// Create element
+		final Element e = Element.of(names[depth], map, texts[depth], array);
+		names[depth] = null;
+		texts[depth] = null;
+
+		// Add to parent or complete tree
+		if(depth == 0) {
+			root = e;
+		}
+		else {
+			if(childCount == children.length) {
+				children = Arrays.copyOf(children, childCount * 2);
+			}
+			children[childCount++] = e;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Retrieves the completed tree and resets this builder for reuse.
+	 * @return Root element
+	 * @throws IllegalStateException if the tree has not been completed
+	 */
+	public Element build() {
+		if(root == null) throw new IllegalStateException("Tree has not been completed");
+		final Element result = root;
+		root = null;
+		return result;
+	}
+
+	/**
+	 * Discards any open elements and resets this builder for reuse.
+	 */
+	public void reset() {
+		Arrays.fill(names, 0, depth, null);
+		Arrays.fill(texts, 0, depth, null);
+		Arrays.fill(attributes, 0, attributeCount, null);
+		Arrays.fill(children, 0, childCount, null);
+		depth = 0;
+		attributeCount = 0;
+		childCount = 0;
+		root = null;
+	}
+}
@@ -0,0 +1,771 @@
+package org.sarge.lib.element;
+
+import static org.sarge.lib.util.Check.notNull;
+
+import java.io.*;
+
+import org.sarge.lib.element.Element.Builder;
+import org.sarge.lib.util.SymbolTable;
+
+/**
+ * Element loader for a YAML document.
+ * <p>
+ * The document is parsed in a single pass directly into an element tree, i.e. without an intermediate object model.
+ * <p>
+ * YAML structures are mapped to elements as follows:
+ * <ul>
+ * <li>the document is loaded as an element named {@code root}</li>
+ * <li>a mapping entry with a scalar value is an <i>attribute</i></li>
+ * <li>a mapping entry with a nested mapping is a <i>child</i> element with the name of the key</li>
+ * <li>a mapping entry with a sequence value is a child element per item, each with the name of the key</li>
+ * <li>a scalar sequence item is the <i>text</i> content of the child element</li>
+ * <li>a mapping entry with an empty value is an empty child element</li>
+ * <li>a null scalar ({@code ~} or {@code null}) is the empty string, i.e. a mapping entry with a null value is an attribute with an empty value</li>
+ * <li>the items of a top-level sequence are named {@link #ITEM}</li>
+ * </ul>
+ * <p>
+ * For example:
+ * <pre>
+ * name: value              &lt;root name="value"&gt;
+ * child:                       &lt;child key="value" /&gt;
+ *   key: value                 &lt;list&gt;one&lt;/list&gt;
+ * list:                        &lt;list&gt;two&lt;/list&gt;
+ *   - one                  &lt;/root&gt;
+ *   - two
+ * </pre>
+ * <p>
+ * This implementation supports block and flow mappings and sequences, plain, single-quoted and double-quoted scalars, literal ({@code |}) and folded ({@code >}) block scalars, and comments.
+ * Anchors, aliases, tags, complex keys, multi-line plain scalars, multiple documents and nested sequences are not supported.
+ * <p>
+ * @see ElementLoader
+ * @author Sarge
+ */
+public class YamlLoader {
+	/**
+	 * Name of the elements for the items of a top-level sequence.
+	 */
+	public static final String ITEM = "item";
+
+	private final SymbolTable symbols;
+
+	/**
+	 * Constructor.
+	 * @param symbols Symbol table for element and attribute names
+	 */
+	public YamlLoader(SymbolTable symbols) {
+		this.symbols = notNull(symbols);
+	}
+
+	/**
+	 * Constructor using the default shared symbol table.
+	 */
+	public YamlLoader() {
+		this(ElementLoader.SYMBOLS);
+	}
+
+	/**
+	 * Loads a YAML document.
+	 * @param r YAML reader
+	 * @return Root element
+	 * @throws IOException if the YAML cannot be loaded
+	 */
+	public Element load(Reader r) throws IOException {
+		final Parser parser = new Parser(r);
+		try {
+			return parser.document();
+		}
+		catch(IllegalArgumentException e) {
+			throw parser.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * A <i>line</i> is a significant line of the document with comments and trailing whitespace removed.
+	 */
+	private record Line(int indent, String content) {
+		/**
+		 * @return Whether this line is a block sequence item
+		 */
+		boolean isItem() {
+			return content.equals("-") || content.startsWith("- ");
+		}
+	}
+
+	/**
+	 * YAML parser.
+	 */
+	private class Parser {
+		private final BufferedReader reader;
+		private Line next;
+		private String pending;
+		private int num;
+
+		/**
+		 * Constructor.
+		 * @param r YAML reader
+		 */
+		Parser(Reader r) {
+			this.reader = new BufferedReader(r);
+		}
+
+		/**
+		 * Creates a parse exception.
+		 * @param message Message
+		 * @return Exception
+		 */
+		IOException error(String message) {
+			return new IOException(String.format("Invalid YAML at line %d: %s", num, message));
+		}
+
+		/**
+		 * @return Next raw line or {@code null} if none
+		 */
+		private String raw() throws IOException {
+			if(pending != null) {
+				final String str = pending;
+				pending = null;
+				return str;
+			}
+			final String str = reader.readLine();
+			if(str != null) {
+				++num;
+			}
+			return str;
+		}
+
+		/**
+		 * Peeks the next significant line, skipping blank lines, comments and directives.
+		 * @return Next line or {@code null} if none
+		 */
+		Line peek() throws IOException {
+			while(next == null) {
+				final String str = raw();
+				if(str == null) {
+					return null;
+				}
+				final String content = strip(str);
+				if(content.isEmpty() || content.startsWith("%") || content.equals("---") || content.equals("...")) {
+					continue;
+				}
+				final int indent = indent(str);
+				if(str.charAt(indent) == '\t') throw error("Tabs cannot be used for indentation");
+				next = new Line(indent, content);
+			}
+			return next;
+		}
+
+		/**
+		 * Consumes the next significant line.
+		 * @return Next line
+		 */
+		Line next() throws IOException {
+			final Line line = peek();
+			if(line == null) throw error("Unexpected end of document");
+			next = null;
+			return line;
+		}
+
+		/**
+		 * Loads the document.
+		 * @return Root element
+		 */
+		Element document() throws IOException {
+			final Builder root = new Builder(symbols);
+			final Line first = peek();
+			if(first != null) {
+				if(first.isItem()) {
+					sequence(root, ITEM, first.indent);
+				}
+				else
+				if(first.content.startsWith("{")) {
+					new Flow(flow(next().content)).mapping(root);
+				}
+				else
+				if(first.content.startsWith("[")) {
+					new Flow(flow(next().content)).sequence(root, ITEM);
+				}
+				else
+				if(separator(first.content) >= 0) {
+					mapping(root, first.indent);
+				}
+				else {
+					text(root, scalar(next().content));
+				}
+			}
+
+			// Check document was fully consumed
+			if(peek() != null) throw error("Unexpected content: " + next.content);
+
+			return root.build();
+		}
+
+		/**
+		 * Loads a block mapping.
+		 * @param builder		Parent element
+		 * @param indent		Mapping indentation
+		 */
+		private void mapping(Builder builder, int indent) throws IOException {
+			while(true) {
+				final Line line = peek();
+				if((line == null) || (line.indent < indent)) {
+					return;
+				}
+				if(line.indent > indent) throw error("Invalid indentation");
+				if(line.isItem()) {
+					return;
+				}
+				next();
+				entry(builder, line.content, indent);
+			}
+		}
+
+		/**
+		 * Loads a mapping entry.
+		 * @param builder		Parent element
+		 * @param content		Entry
+		 * @param indent		Mapping indentation
+		 */
+		private void entry(Builder builder, String content, int indent) throws IOException {
+			// Split key-value pair
+			final int sep = separator(content);
+			if(sep < 0) throw error("Expected mapping entry: " + content);
+			final String key = scalar(content.substring(0, sep));
+			final String value = content.substring(sep + 1).trim();
+
+			// Load value
+			if(value.isEmpty()) {
+				nested(builder, key, indent);
+			}
+			else
+			if(value.startsWith("{")) {
+				final Builder child = builder.child().name(key);
+				new Flow(flow(value)).mapping(child);
+				child.end();
+			}
+			else
+			if(value.startsWith("[")) {
+				new Flow(flow(value)).sequence(builder, key);
+			}
+			else
+			if(value.startsWith("|") || value.startsWith(">")) {
+				builder.attribute(key, block(value, indent));
+			}
+			else {
+				builder.attribute(key, scalar(value));
+			}
+		}
+
+		/**
+		 * Loads the nested block value of a mapping entry.
+		 * @param builder		Parent element
+		 * @param key			Key
+		 * @param indent		Mapping indentation
+		 */
+		private void nested(Builder builder, String key, int indent) throws IOException {
+			final Line line = peek();
+			if((line != null) && line.isItem() && (line.indent >= indent)) {
+				// Nested sequence (which can be at the same indentation as the key)
+				sequence(builder, key, line.indent);
+			}
+			else
+			if((line != null) && (line.indent > indent)) {
+				// Nested mapping
+				final Builder child = builder.child().name(key);
+				mapping(child, line.indent);
+				child.end();
+			}
+			else {
+				// Empty value
+				builder.child().name(key).end();
+			}
+		}
+
+		/**
+		 * Loads a block sequence.
+		 * @param builder		Parent element
+		 * @param key			Item name
+		 * @param indent		Sequence indentation
+		 */
+		private void sequence(Builder builder, String key, int indent) throws IOException {
+			while(true) {
+				final Line line = peek();
+				if((line == null) || (line.indent != indent) || !line.isItem()) {
+					if((line != null) && (line.indent > indent)) throw error("Invalid indentation");
+					return;
+				}
+				next();
+				item(builder.child().name(key), line, indent).end();
+			}
+		}
+
+		/**
+		 * Loads a block sequence item.
+		 * @param item			Item element
+		 * @param line			Item line
+		 * @param indent		Sequence indentation
+		 * @return Item element
+		 */
+		private Builder item(Builder item, Line line, int indent) throws IOException {
+			final String value = line.content.substring(1).trim();
+			if(value.isEmpty()) {
+				// Nested block mapping
+				final Line nested = peek();
+				if((nested != null) && (nested.indent > indent)) {
+					if(nested.isItem()) throw error("Nested sequences are not supported");
+					mapping(item, nested.indent);
+				}
+			}
+			else
+			if(value.startsWith("- ") || value.equals("-") || value.startsWith("[")) {
+				throw error("Nested sequences are not supported");
+			}
+			else
+			if(value.startsWith("{")) {
+				new Flow(flow(value)).mapping(item);
+			}
+			else
+			if(separator(value) >= 0) {
+				// Compact mapping starting on the item line
+				final int column = indent + line.content.indexOf(value);
+				entry(item, value, column);
+				mapping(item, column);
+			}
+			else {
+				text(item, scalar(value));
+			}
+			return item;
+		}
+
+		/**
+		 * Accumulates a flow collection that may span several lines.
+		 * @param start First line of the collection
+		 * @return Flow collection
+		 */
+		private String flow(String start) throws IOException {
+			final StringBuilder str = new StringBuilder(start);
+			while(!balanced(str)) {
+				str.append(' ').append(next().content);
+			}
+			return str.toString();
+		}
+
+		/**
+		 * Loads a literal or folded block scalar.
+		 * @param header		Block header, e.g. {@code |-}
+		 * @param indent		Indentation of the parent
+		 * @return Block text
+		 */
+		private String block(String header, int indent) throws IOException {
+			// Read block lines
+			final StringBuilder text = new StringBuilder();
+			int block = -1;
+			int blank = 0;
+			while(true) {
+				final String str = raw();
+				if(str == null) {
+					break;
+				}
+
+				// Count blank lines
+				if(str.isBlank()) {
+					++blank;
+					continue;
+				}
+
+				// Determine block indentation from the first line
+				final int current = indent(str);
+				if(block < 0) {
+					block = current;
+				}
+
+				// Stop at the end of the block
+				if((current < block) || (current <= indent)) {
+					pending = str;
+					break;
+				}
+
+				// Append line
+				final boolean folded = header.startsWith(">") && (current == block);
+				if(text.length() > 0) {
+					if(!folded) {
+						text.append('\n');
+					}
+					else
+					if(blank == 0) {
+						// Fold line break to a space
+						text.append(' ');
+					}
+					// Otherwise folding drops the line break preceding blank lines
+				}
+				text.append("\n".repeat(blank));
+				text.append(str.substring(block));
+				blank = 0;
+			}
+
+			// Apply chomping indicator
+			if(header.endsWith("-") || text.isEmpty()) {
+				return text.toString();
+			}
+			else {
+				return text.append('\n').toString();
+			}
+		}
+	}
+
+	/**
+	 * Parser for a flow collection.
+	 */
+	private class Flow {
+		private final String str;
+		private int pos;
+
+		/**
+		 * Constructor.
+		 * @param str Flow collection
+		 */
+		Flow(String str) {
+			this.str = str;
+		}
+
+		/**
+		 * Skips whitespace.
+		 */
+		private void skip() {
+			while((pos < str.length()) && Character.isWhitespace(str.charAt(pos))) {
+				++pos;
+			}
+		}
+
+		/**
+		 * @return Next character (after whitespace)
+		 */
+		private char peek() {
+			skip();
+			if(pos >= str.length()) throw new IllegalArgumentException("Unterminated flow collection: " + str);
+			return str.charAt(pos);
+		}
+
+		/**
+		 * Consumes the expected character.
+		 */
+		private void expect(char c) {
+			if(peek() != c) throw new IllegalArgumentException(String.format("Expected '%c' at column %d: %s", c, pos + 1, str));
+			++pos;
+		}
+
+		/**
+		 * Consumes a separator or the end of a collection.
+		 * @param end End character
+		 * @return Whether the end of the collection was reached
+		 */
+		private boolean next(char end) {
+			final char c = peek();
+			if(c == end) {
+				++pos;
+				return true;
+			}
+			expect(',');
+			if(peek() == end) {
+				++pos;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Loads a flow mapping into the given element.
+		 * @param builder Element
+		 */
+		void mapping(Builder builder) {
+			expect('{');
+			if(peek() == '}') {
+				++pos;
+				return;
+			}
+			do {
+				// Load key
+				final String key = scalar(true);
+				if(peek() == ':') {
+					++pos;
+					final char c = peek();
+					if(c == '{') {
+						final Builder child = builder.child().name(key);
+						mapping(child);
+						child.end();
+						continue;
+					}
+					if(c == '[') {
+						sequence(builder, key);
+						continue;
+					}
+					if((c != ',') && (c != '}')) {
+						// Load scalar value (including null)
+						builder.attribute(key, scalar(false));
+						continue;
+					}
+				}
+
+				// Otherwise empty value
+				builder.child().name(key).end();
+			}
+			while(!next('}'));
+		}
+
+		/**
+		 * Loads a flow sequence.
+		 * @param builder		Parent element
+		 * @param key			Item name
+		 */
+		void sequence(Builder builder, String key) {
+			expect('[');
+			if(peek() == ']') {
+				++pos;
+				return;
+			}
+			do {
+				final Builder item = builder.child().name(key);
+				switch(peek()) {
+					case '{' -> mapping(item);
+					case '[' -> throw new IllegalArgumentException("Nested sequences are not supported");
+					default -> text(item, scalar(false));
+				}
+				item.end();
+			}
+			while(!next(']'));
+		}
+
+		/**
+		 * Loads a flow scalar.
+		 * @param key Whether the scalar is a mapping key
+		 * @return Scalar
+		 */
+		private String scalar(boolean key) {
+			final int start = pos;
+			final char first = peek();
+			if((first == '"') || (first == '\'')) {
+				// Delimit quoted scalar
+				++pos;
+				while(true) {
+					if(pos >= str.length()) throw new IllegalArgumentException("Unterminated quoted scalar: " + str);
+					final char c = str.charAt(pos++);
+					if(c == first) {
+						if((first == '\'') && (pos < str.length()) && (str.charAt(pos) == '\'')) {
+							++pos;
+							continue;
+						}
+						break;
+					}
+					if((c == '\\') && (first == '"')) {
+						++pos;
+					}
+				}
+			}
+			else {
+				// Delimit plain scalar
+				while(pos < str.length()) {
+					final char c = str.charAt(pos);
+					if((c == ',') || (c == ']') || (c == '}') || (key && (c == ':'))) {
+						break;
+					}
+					++pos;
+				}
+			}
+			return YamlLoader.scalar(str.substring(start, pos));
+		}
+	}
+
+	/**
+	 * @return Whether the given flow collection is complete
+	 */
+	private static boolean balanced(CharSequence str) {
+		int depth = 0;
+		char quote = 0;
+		for(int n = 0; n < str.length(); ++n) {
+			final char c = str.charAt(n);
+			if(quote != 0) {
+				if(c == quote) {
+					// Skip escaped single quote
+					if((quote == '\'') && (n + 1 < str.length()) && (str.charAt(n + 1) == '\'')) {
+						++n;
+					}
+					else {
+						quote = 0;
+					}
+				}
+				else
+				if((c == '\\') && (quote == '"')) {
+					++n;
+				}
+			}
+			else {
+				switch(c) {
+					case '"', '\'' -> quote = c;
+					case '[', '{' -> ++depth;
+					case ']', '}' -> --depth;
+				}
+			}
+		}
+		return depth <= 0;
+	}
+
+	/**
+	 * Sets the text content of an element.
+	 * @param builder		Element
+	 * @param text			Text content
+	 */
+	private static void text(Builder builder, String text) {
+		if(!text.isEmpty()) {
+			builder.text(text);
+		}
+	}
+
+	/**
+	 * Determines the indentation of the given line.
+	 * @param line Line
+	 * @return Indentation
+	 */
+	private static int indent(String line) {
+		int n = 0;
+		while((n < line.length()) && (line.charAt(n) == ' ')) {
+			++n;
+		}
+		return n;
+	}
+
+	/**
+	 * Strips the indentation, trailing whitespace and any comment from the given line.
+	 * @param line Line
+	 * @return Line content
+	 */
+	private static String strip(String line) {
+		char quote = 0;
+		for(int n = 0; n < line.length(); ++n) {
+			final char c = line.charAt(n);
+			if(quote != 0) {
+				if(c == quote) {
+					// Skip escaped single quote
+					if((quote == '\'') && (n + 1 < line.length()) && (line.charAt(n + 1) == '\'')) {
+						++n;
+					}
+					else {
+						quote = 0;
+					}
+				}
+				else
+				if((c == '\\') && (quote == '"')) {
+					++n;
+				}
+			}
+			else
+			if((c == '"') || (c == '\'')) {
+				// Only treat as a quote at the start of a scalar
+				if((n == 0) || " \t:[{,-".indexOf(line.charAt(n - 1)) >= 0) {
+					quote = c;
+				}
+			}
+			else
+			if((c == '#') && ((n == 0) || Character.isWhitespace(line.charAt(n - 1)))) {
+				return line.substring(0, n).strip();
+			}
+		}
+		return line.strip();
+	}
+
+	/**
+	 * Finds the key-value separator of a block mapping entry, i.e. a colon outside of quotes followed by whitespace or the end of the line.
+	 * @param content Line content
+	 * @return Separator index or {@code -1} if the given line is not a mapping entry
+	 */
+	private static int separator(String content) {
+		if(content.startsWith("{") || content.startsWith("[")) {
+			return -1;
+		}
+		char quote = 0;
+		for(int n = 0; n < content.length(); ++n) {
+			final char c = content.charAt(n);
+			if(quote != 0) {
+				if(c == quote) {
+					// Skip escaped single quote
+					if((quote == '\'') && (n + 1 < content.length()) && (content.charAt(n + 1) == '\'')) {
+						++n;
+					}
+					else {
+						quote = 0;
+					}
+				}
+				else
+				if((c == '\\') && (quote == '"')) {
+					++n;
+				}
+			}
+			else
+			if(((c == '"') || (c == '\'')) && (n == 0)) {
+				quote = c;
+			}
+			else
+			if((c == ':') && ((n + 1 == content.length()) || (content.charAt(n + 1) == ' '))) {
+				return n;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses a scalar.
+	 * @param str Scalar
+	 * @return Unquoted scalar
+	 * @throws IllegalArgumentException if a quoted scalar is invalid
+	 */
+	private static String scalar(String str) {
+		final String scalar = str.strip();
+		if(scalar.length() >= 2) {
+			final char first = scalar.charAt(0);
+			final char last = scalar.charAt(scalar.length() - 1);
+			if((first == '\'') && (last == '\'')) {
+				return scalar.substring(1, scalar.length() - 1).replace("''", "'");
+			}
+			if((first == '"') && (last == '"')) {
+				return unescape(scalar.substring(1, scalar.length() - 1));
+			}
+		}
+		if(scalar.startsWith("\"") || scalar.startsWith("'")) throw new IllegalArgumentException("Unterminated quoted scalar: " + scalar);
+		if(scalar.equals("~") || scalar.equals("null")) {
+			return "";
+		}
+		return scalar;
+	}
+
+	/**
+	 * Decodes the escape sequences of a double-quoted scalar.
+	 * @param str Scalar
+	 * @return Decoded scalar
+	 */
+	private static String unescape(String str) {
+		if(str.indexOf('\\') < 0) {
+			return str;
+		}
+
+		final StringBuilder sb = new StringBuilder(str.length());
+		for(int n = 0; n < str.length(); ++n) {
+			final char c = str.charAt(n);
+			if((c != '\\') || (n + 1 == str.length())) {
+				sb.append(c);
+				continue;
+			}
+			final char next = str.charAt(++n);
+			switch(next) {
+				case 'n' -> sb.append('\n');
+				case 't' -> sb.append('\t');
+				case 'r' -> sb.append('\r');
+				case '0' -> sb.append('\0');
+				case 'u' -> {
+					if(n + 5 > str.length()) throw new IllegalArgumentException("Invalid unicode escape: " + str);
+					sb.append((char) Integer.parseInt(str.substring(n + 1, n + 5), 16));
+					n += 4;
+				}
+				default -> sb.append(next);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,65 @@
+package org.sarge.lib.util;
+
+import static org.sarge.lib.util.Check.zeroOrMore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A <i>symbol table</i> canonicalises strings such as element and attribute names that are repeated many times within a document.
+ * <p>
+ * Interning repeated strings reduces the retained heap for documents with a repetitive schema and means that equal names are generally also identical.
+ * <p>
+ * @author Sarge
+ */
+@FunctionalInterface
+public interface SymbolTable {
+	/**
+	 * Canonicalises the given string.
+	 * @param str String
+	 * @return Canonical instance of the given string
+	 */
+	String intern(String str);
+
+	/**
+	 * Symbol table that does not perform any interning.
+	 */
+	SymbolTable NONE = str -> str;
+
+	/**
+	 * Creates a thread-safe symbol table bounded by the given maximum number of entries.
+	 * Strings are returned unchanged once the table is full.
+	 * @param max Maximum number of entries
+	 * @return New symbol table
+	 */
+	static SymbolTable of(int max) {
+		zeroOrMore(max);
+		final Map<String, String> table = new ConcurrentHashMap<>();
+
+		return str -> {
+			if(str == null) {
+				return null;
+			}
+
+			// Lookup canonical string
+			final String prev = table.get(str);
+			if(prev != null) {
+				return prev;
+			}
+
+			// Ignore if the table is full
+			if(table.size() >= max) {
+				return str;
+			}
+
+			// Register new symbol
+			final String result = table.putIfAbsent(str, str);
+			if(result == null) {
+				return str;
+			}
+			else {
+				return result;
+			}
+		};
+	}
+}
@@ -0,0 +1,221 @@
+package org.sarge.lib.util;
+
+import static org.sarge.lib.util.Check.notNull;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * A <i>tree spliterator</i> iteratively traverses a tree of objects.
+ * <p>
+ * The traversal uses an explicit stack of sibling ranges, so deep trees cannot overflow the call stack.
+ * Nodes can be visited in {@link Order#PRE} or {@link Order#POST} order, and a <i>prune</i> predicate excludes a node together with its sub-tree.
+ * <p>
+ * The spliterator supports parallel traversal. A split divides the shallowest pending range of siblings in half, so wide trees are partitioned into balanced sub-trees that preserve the encounter order.
+ * Since the size of the tree is unknown the estimated size is halved on each split, which limits the number of splits in proportion to the parallelism of the stream.
+ * <p>
+ * @param <T> Node type
+ * @see Utility#traverse(Object, Function, Order, Predicate)
+ * @author Sarge
+ */
+public final class TreeSpliterator<T> implements Spliterator<T> {
+	/**
+	 * Traversal order.
+	 */
+	public enum Order {
+		/**
+		 * Each node is visited before its children.
+		 */
+		PRE,
+
+		/**
+		 * Each node is visited after its children.
+		 */
+		POST
+	}
+
+	/**
+	 * Pending range of siblings.
+	 */
+	private static class Frame<T> {
+		private final List<? extends T> siblings;
+		private final T parent;
+		private int index;
+		private final int end;
+
+		/**
+		 * Constructor.
+		 * @param siblings		Siblings
+		 * @param index			Start index
+		 * @param end			End index (exclusive)
+		 * @param parent		Parent to be visited after the siblings in post-order or {@code null} if none
+		 */
+		Frame(List<? extends T> siblings, int index, int end, T parent) {
+			this.siblings = siblings;
+			this.index = index;
+			this.end = end;
+			this.parent = parent;
+		}
+
+		/**
+		 * @return Number of remaining siblings
+		 */
+		int remaining() {
+			return end - index;
+		}
+	}
+
+	private final Function<? super T, ? extends List<? extends T>> children;
+	private final Order order;
+	private final Predicate<? super T> prune;
+	private Deque<Frame<T>> stack = new ArrayDeque<>();
+	private long estimate = Long.MAX_VALUE;
+
+	/**
+	 * Constructor.
+	 * @param roots			Root nodes
+	 * @param children		Children of a node
+	 * @param order			Traversal order
+	 * @param prune			Predicate for nodes that are excluded from the traversal along with their sub-tree
+	 */
+	public TreeSpliterator(List<? extends T> roots, Function<? super T, ? extends List<? extends T>> children, Order order, Predicate<? super T> prune) {
+		this(children, order, prune);
+		stack.push(new Frame<>(notNull(roots), 0, roots.size(), null));
+	}
+
+	/**
+	 * Constructor for a split.
+	 */
+	private TreeSpliterator(Function<? super T, ? extends List<? extends T>> children, Order order, Predicate<? super T> prune) {
+		this.children = notNull(children);
+		this.order = notNull(order);
+		this.prune = notNull(prune);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		while(!stack.isEmpty()) {
+			final Frame<T> frame = stack.peek();
+
+			// Complete range of siblings
+			if(frame.index == frame.end) {
+				stack.pop();
+				if(frame.parent != null) {
+					action.accept(frame.parent);
+					return true;
+				}
+				continue;
+			}
+
+			// Skip pruned sub-tree
+			final T node = frame.siblings.get(frame.index++);
+			if(prune.test(node)) {
+				continue;
+			}
+
+			// Visit node and/or descend into children
+			final List<? extends T> list = children.apply(node);
+			if(order == Order.PRE) {
+				if(!list.isEmpty()) {
+					stack.push(new Frame<>(list, 0, list.size(), null));
+				}
+				action.accept(node);
+				return true;
+			}
+			else
+			if(list.isEmpty()) {
+				action.accept(node);
+				return true;
+			}
+			else {
+				stack.push(new Frame<>(list, 0, list.size(), node));
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	public Spliterator<T> trySplit() {
+		while(true) {
+			final Frame<T> bottom = stack.peekLast();
+			if(bottom == null) {
+				return null;
+			}
+
+			// Split the shallowest range of siblings in half
+			final int remaining = bottom.remaining();
+			if(remaining >= 2) {
+				final int mid = bottom.index + remaining / 2;
+				final TreeSpliterator<T> prefix = split();
+				prefix.stack.addLast(new Frame<>(bottom.siblings, bottom.index, mid, null));
+				bottom.index = mid;
+				return prefix;
+			}
+
+			// Otherwise split deeper ranges from the remainder
+			if(stack.size() > 1) {
+				return split();
+			}
+
+			// Stop at the end of the traversal
+			if(remaining == 0) {
+				return null;
+			}
+
+			// Otherwise expand a single remaining node
+			final T node = bottom.siblings.get(bottom.index);
+			if(prune.test(node)) {
+				++bottom.index;
+				continue;
+			}
+			final List<? extends T> list = children.apply(node);
+			if(order == Order.PRE) {
+				// Stop at a leaf node
+				if(list.isEmpty()) {
+					return null;
+				}
+
+				// Split off the node itself which precedes its children
+				stack.clear();
+				stack.push(new Frame<>(list, 0, list.size(), null));
+				final TreeSpliterator<T> prefix = new TreeSpliterator<>(__ -> List.of(), order, prune);
+				prefix.stack.push(new Frame<>(List.of(node), 0, 1, null));
+				prefix.estimate = 1;
+				return prefix;
+			}
+			else {
+				// Descend and retry
+				++bottom.index;
+				if(bottom.parent == null) {
+					stack.clear();
+				}
+				stack.push(new Frame<>(list, 0, list.size(), node));
+			}
+		}
+	}
+
+	/**
+	 * Moves the pending ranges of this spliterator (other than the shallowest) to a new prefix spliterator and halves the estimated size.
+	 * @return Prefix spliterator
+	 */
+	private TreeSpliterator<T> split() {
+		final TreeSpliterator<T> prefix = new TreeSpliterator<>(children, order, prune);
+		prefix.stack = stack;
+		stack = new ArrayDeque<>();
+		stack.addLast(prefix.stack.pollLast());
+		estimate >>>= 1;
+		prefix.estimate = estimate;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return estimate;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+}
@@ -3,8 +3,10 @@ package org.sarge.lib.util;
 import static java.util.stream.Collectors.toMap;
 
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Stream;
+import java.util.function.*;
+import java.util.stream.*;
+
+import org.sarge.lib.util.TreeSpliterator.Order;
 
 /**
  * General utility methods and helpers.
@@ -28,14 +30,44 @@ public final class Utility {
 	}
 
 	/**
-	 * Flattens a tree of objects.
+	 * Flattens a tree of objects in pre-order.
 	 * @param <T> Type
 	 * @param obj			Starting object
 	 * @param mapper		Sub-tree mapping function
 	 * @return Flattened stream
+	 * @see #traverse(Object, Function)
 	 */
 	public static <T> Stream<T> flatten(T obj, Function<T, Stream<T>> mapper) {
-		return Stream.concat(Stream.of(obj), mapper.apply(obj).flatMap(e -> flatten(e, mapper)));
+		return traverse(obj, e -> mapper.apply(e).toList());
+	}
+
+	/**
+	 * Iteratively traverses a tree of objects in pre-order.
+	 * @param <T> Type
+	 * @param root			Root object
+	 * @param children		Children of an object
+	 * @return Traversal stream
+	 * @see TreeSpliterator
+	 */
+	public static <T> Stream<T> traverse(T root, Function<? super T, ? extends List<? extends T>> children) {
+		return traverse(root, children, Order.PRE, __ -> false);
+	}
+
+	/**
+	 * Iteratively traverses a tree of objects.
+	 * <p>
+	 * The resultant stream can be split evenly for parallel processing, see {@link TreeSpliterator}.
+	 * <p>
+	 * @param <T> Type
+	 * @param root			Root object
+	 * @param children		Children of an object
+	 * @param order			Traversal order
+	 * @param prune			Predicate for objects that are excluded along with their sub-tree
+	 * @return Traversal stream
+	 */
+	public static <T> Stream<T> traverse(T root, Function<? super T, ? extends List<? extends T>> children, Order order, Predicate<? super T> prune) {
+		final var spliterator = new TreeSpliterator<T>(List.of(root), children, order, prune);
+		return StreamSupport.stream(spliterator, false);
 	}
 
 	/**
@@ -0,0 +1,71 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class AttributeMapTest {
+	private Map<String, String> map;
+
+	@BeforeEach
+	void before() {
+		map = AttributeMap.of(Map.of("a", "1", "b", "2"));
+	}
+
+	@Test
+	void of() {
+		assertTrue(map instanceof AttributeMap);
+		assertEquals(2, map.size());
+		assertFalse(map.isEmpty());
+		assertSame(map, AttributeMap.of(map));
+	}
+
+	@Test
+	void get() {
+		assertEquals("1", map.get("a"));
+		assertEquals("2", map.get("b"));
+		assertNull(map.get("c"));
+		assertTrue(map.containsKey("a"));
+		assertFalse(map.containsKey("c"));
+	}
+
+	@Test
+	void equals() {
+		final Map<String, String> expected = Map.of("a", "1", "b", "2");
+		assertEquals(expected, map);
+		assertEquals(map, expected);
+		assertEquals(expected.hashCode(), map.hashCode());
+	}
+
+	@Test
+	void empty() {
+		assertSame(Map.of(), AttributeMap.of(new HashMap<>()));
+	}
+
+	@Test
+	void large() {
+		final Map<String, String> large = new HashMap<>();
+		for(int n = 0; n <= AttributeMap.MAX; ++n) {
+			large.put(String.valueOf(n), "value");
+		}
+		final Map<String, String> copy = AttributeMap.of(large);
+		assertFalse(copy instanceof AttributeMap);
+		assertEquals(large, copy);
+	}
+
+	@Test
+	void array() {
+		final String[] entries = {"x", "y", "a", "1", "b", "2", "z"};
+		assertEquals(map, AttributeMap.of(entries, 2, 6));
+		assertTrue(AttributeMap.of(entries, 2, 6) instanceof AttributeMap);
+		assertSame(Map.of(), AttributeMap.of(entries, 2, 2));
+	}
+
+	@Test
+	void immutable() {
+		assertThrows(UnsupportedOperationException.class, () -> map.put("c", "3"));
+		assertThrows(UnsupportedOperationException.class, () -> map.clear());
+	}
+}
@@ -0,0 +1,132 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.time.Duration;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+import org.sarge.lib.element.Element.ElementException;
+import org.sarge.lib.util.Converter;
+
+public class ElementBinderTest {
+	enum Colour {
+		RED,
+		DARK_GREEN
+	}
+
+	record Point(float x, float y) {
+	}
+
+	record Shape(String name, Colour colour, int count, boolean visible, Duration delay, List<Point> point) {
+	}
+
+	record Node(String name, List<Node> node) {
+	}
+
+	private static Element load(String xml) throws IOException {
+		return new ElementLoader().load(new StringReader(xml));
+	}
+
+	@DisplayName("A record can be bound from the attributes and children of an element")
+	@Test
+	void bind() throws IOException {
+		final Element e = load("""
+				<shape name="triangle" count="3" visible="true">
+					<colour>dark-green</colour>
+					<delay>2s</delay>
+					<point x="0" y="0" />
+					<point x="1" y="2" />
+				</shape>
+				""");
+		final Shape expected = new Shape("triangle", Colour.DARK_GREEN, 3, true, Duration.ofSeconds(2), List.of(new Point(0, 0), new Point(1, 2)));
+		assertEquals(expected, ElementBinder.of(Shape.class).apply(e));
+	}
+
+	@DisplayName("A list component is empty if there are no matching child elements")
+	@Test
+	void empty() throws IOException {
+		final Element e = load("<shape name='empty' colour='red' count='0' visible='false' delay='1ms'/>");
+		assertEquals(List.of(), ElementBinder.of(Shape.class).apply(e).point());
+	}
+
+	@DisplayName("A list component can contain scalar values")
+	@Test
+	void scalars() throws IOException {
+		record Values(List<Integer> value) {
+		}
+		final Element e = load("<values><value>1</value><value>2</value></values>");
+		assertEquals(new Values(List.of(1, 2)), ElementBinder.of(Values.class).apply(e));
+	}
+
+	@DisplayName("A record can contain a nested record")
+	@Test
+	void nested() throws IOException {
+		record Line(Point start, Point end) {
+		}
+		final Element e = load("<line><start x='1' y='2'/><end x='3' y='4'/></line>");
+		assertEquals(new Line(new Point(1, 2), new Point(3, 4)), ElementBinder.of(Line.class).apply(e));
+	}
+
+	@DisplayName("A recursive record can be bound")
+	@Test
+	void recursive() throws IOException {
+		final Element e = load("<root name='a'><node name='b'><node name='c'/></node></root>");
+		final Node expected = new Node("a", List.of(new Node("b", List.of(new Node("c", List.of())))));
+		assertEquals(expected, ElementBinder.of(Node.class).apply(e));
+	}
+
+	@DisplayName("A binder can be configured with additional converters")
+	@Test
+	void converters() throws IOException {
+		record Custom(StringBuilder value) {
+		}
+		final Map<Class<?>, Converter<?>> converters = Map.of(StringBuilder.class, StringBuilder::new);
+		final Custom custom = ElementBinder.of(Custom.class, converters).apply(load("<custom value='text'/>"));
+		assertEquals("text", custom.value().toString());
+	}
+
+	@DisplayName("A binder can be registered as a loader")
+	@Test
+	void registry() throws IOException {
+		final var registry = new LoaderRegistry<Record>();
+		registry.register("point", ElementBinder.of(Point.class)::apply);
+		assertEquals(new Point(1, 2), registry.load(load("<point x='1' y='2'/>")));
+	}
+
+	@DisplayName("An element cannot be bound if a component is missing")
+	@Test
+	void missing() throws IOException {
+		final Element e = load("<point x='1'/>");
+		final ElementException ex = assertThrows(ElementException.class, () -> ElementBinder.of(Point.class).apply(e));
+		assertEquals("Expected attribute or child element: y at /point", ex.getMessage());
+	}
+
+	@DisplayName("An element cannot be bound if a component is invalid")
+	@Test
+	void invalid() throws IOException {
+		final Element e = load("<point x='1' y='cobblers'/>");
+		assertThrows(ElementException.class, () -> ElementBinder.of(Point.class).apply(e));
+	}
+
+	@DisplayName("A failure in the record constructor is wrapped")
+	@Test
+	void constructor() throws IOException {
+		record Positive(int value) {
+			Positive {
+				if(value < 0) throw new IllegalArgumentException();
+			}
+		}
+		final Element e = load("<positive value='-1'/>");
+		assertThrows(ElementException.class, () -> ElementBinder.of(Positive.class).apply(e));
+	}
+
+	@DisplayName("A binder cannot be created for a record with an unsupported component")
+	@Test
+	void unsupported() {
+		record Unsupported(Object value) {
+		}
+		assertThrows(IllegalArgumentException.class, () -> ElementBinder.of(Unsupported.class));
+	}
+}
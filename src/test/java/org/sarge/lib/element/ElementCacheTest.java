@@ -0,0 +1,179 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ElementCacheTest {
+	@TempDir
+	Path dir;
+
+	private ElementCache cache;
+	private Path path;
+
+	@BeforeEach
+	void before() throws IOException {
+		cache = new ElementCache(new ElementLoader(), 1024);
+		path = Files.writeString(dir.resolve("document.xml"), "<root />");
+	}
+
+	@AfterEach
+	void after() throws IOException {
+		cache.close();
+	}
+
+	@Test
+	void load() throws IOException {
+		final Element root = cache.load(path);
+		assertEquals(new Element("root"), root);
+		assertSame(root, cache.load(path));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void modified() throws IOException {
+		final Element prev = cache.load(path);
+		Files.writeString(path, "<changed />");
+		Files.setLastModifiedTime(path, FileTime.fromMillis(0));
+		final Element root = cache.load(path);
+		assertNotSame(prev, root);
+		assertEquals(new Element("changed"), root);
+	}
+
+	/**
+	 * Waits for the file watcher to evict all cached documents.
+	 */
+	private void evicted() throws InterruptedException {
+		final long end = System.currentTimeMillis() + 10_000;
+		while(cache.size() > 0) {
+			if(System.currentTimeMillis() > end) {
+				fail("Document was not evicted by the file watcher");
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	@Test
+	void watchModified() throws Exception {
+		cache.load(path);
+		assertEquals(1, cache.size());
+		Files.writeString(path, "<changed />");
+		evicted();
+	}
+
+	@Test
+	void watchDeleted() throws Exception {
+		cache.load(path);
+		assertEquals(1, cache.size());
+		Files.delete(path);
+		evicted();
+	}
+
+	@Test
+	void overflow() throws IOException {
+		final Path other = Files.writeString(dir.resolve("other.xml"), "<other />");
+		cache.load(path);
+		cache.load(other);
+		assertEquals(2, cache.size());
+
+		final WatchEvent<Object> event = new WatchEvent<>() {
+			@Override
+			public Kind<Object> kind() {
+				return StandardWatchEventKinds.OVERFLOW;
+			}
+
+			@Override
+			public int count() {
+				return 1;
+			}
+
+			@Override
+			public Object context() {
+				return null;
+			}
+		};
+		cache.evict(dir.resolve("cobblers"), event);
+		assertEquals(2, cache.size());
+		cache.evict(dir.toAbsolutePath().normalize(), event);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void invalidate() throws IOException {
+		final Element prev = cache.load(path);
+		cache.invalidate(path);
+		assertEquals(0, cache.size());
+		assertNotSame(prev, cache.load(path));
+	}
+
+	@Test
+	void bounded() throws IOException {
+		final Path large = Files.writeString(dir.resolve("large.xml"), "<root>" + "x".repeat(1010) + "</root>");
+		cache.load(path);
+		cache.load(large);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void exceedsBound() throws IOException {
+		final Path large = Files.writeString(dir.resolve("large.xml"), "<root>" + "x".repeat(2000) + "</root>");
+		cache.load(large);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void clear() throws IOException {
+		cache.load(path);
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void missing() {
+		assertThrows(IOException.class, () -> cache.load(dir.resolve("cobblers.xml")));
+	}
+
+	@Test
+	void concurrent() throws Exception {
+		// Create a slow loader
+		final AtomicInteger count = new AtomicInteger();
+		final ElementLoader loader = new ElementLoader() {
+			@Override
+			public Element load(Path path) throws IOException {
+				count.incrementAndGet();
+				try {
+					Thread.sleep(200);
+				}
+				catch(InterruptedException e) {
+					throw new IOException(e);
+				}
+				return super.load(path);
+			}
+		};
+
+		// Load the same document concurrently
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try(ElementCache slow = new ElementCache(loader, 1024)) {
+			final List<Future<Element>> results = new ArrayList<>();
+			for(int n = 0; n < 4; ++n) {
+				results.add(executor.submit(() -> slow.load(path)));
+			}
+			final Element root = results.get(0).get();
+			for(Future<Element> result : results) {
+				assertSame(root, result.get());
+			}
+			assertEquals(1, count.get());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.List;
+
+import org.junit.jupiter.api.*;
+import org.sarge.lib.element.ElementDiff.*;
+
+public class ElementDiffTest {
+	private static Element load(String xml) throws IOException {
+		return new ElementLoader().load(new StringReader(xml));
+	}
+
+	@Test
+	void equal() throws IOException {
+		final String xml = "<root><a x='1'>text</a><b/></root>";
+		assertEquals(List.of(), ElementDiff.compare(load(xml), load(xml)));
+	}
+
+	@Test
+	void changed() throws IOException {
+		final Element before = load("<root><a x='1'><c/></a><b/></root>");
+		final Element after = load("<root><a x='2'><c/></a><b/></root>");
+		final Element a = after.child("a");
+		assertEquals(List.of(new Change(Type.CHANGED, before.child("a"), a)), ElementDiff.compare(before, after));
+	}
+
+	@Test
+	void text() throws IOException {
+		final Element before = load("<root><a><b>one</b></a></root>");
+		final Element after = load("<root><a><b>two</b></a></root>");
+		final List<Change> changes = ElementDiff.compare(before, after);
+		assertEquals(1, changes.size());
+		assertEquals(Type.CHANGED, changes.get(0).type());
+		assertEquals("/root/a/b", changes.get(0).location());
+	}
+
+	@Test
+	void added() throws IOException {
+		final Element before = load("<root><a/></root>");
+		final Element after = load("<root><a/><a/><b/></root>");
+		final List<Change> changes = ElementDiff.compare(before, after);
+		assertEquals(2, changes.size());
+		assertEquals(new Change(Type.ADDED, null, after.children("a").toList().get(1)), changes.get(0));
+		assertEquals(new Change(Type.ADDED, null, after.child("b")), changes.get(1));
+		assertEquals("/root/a[2]", changes.get(0).location());
+	}
+
+	@Test
+	void removed() throws IOException {
+		final Element before = load("<root><a><b/><c/></a></root>");
+		final Element after = load("<root><a><b/></a></root>");
+		final Element c = before.child("a").child("c");
+		assertEquals(List.of(new Change(Type.REMOVED, c, null)), ElementDiff.compare(before, after));
+		assertEquals(c, ElementDiff.compare(before, after).get(0).element());
+	}
+
+	@Test
+	void root() throws IOException {
+		final Element before = load("<root><a/></root>");
+		final Element after = load("<other><a/></other>");
+		assertEquals(List.of(new Change(Type.CHANGED, before, after)), ElementDiff.compare(before, after));
+	}
+
+	@Test
+	void order() throws IOException {
+		final Element before = load("<root><a><x/></a><b><y/></b><c/></root>");
+		final Element after = load("<root><a><x v='1'/></a><b><y v='2'/></b></root>");
+		final List<String> locations = ElementDiff.compare(before, after).stream().map(Change::location).toList();
+		assertEquals(List.of("/root/a/x", "/root/b/y", "/root/c"), locations);
+	}
+
+	@Test
+	void interleaved() throws IOException {
+		final Element before = load("<root><a/><c><x/></c><d/></root>");
+		final Element after = load("<root><a/><b/><c><x v='1'/></c><e/><d/><f/></root>");
+		final List<String> locations = ElementDiff.compare(before, after).stream().map(Change::location).toList();
+		assertEquals(List.of("/root/b", "/root/c/x", "/root/e", "/root/f"), locations);
+	}
+
+	@Test
+	void deep() throws IOException {
+		final int depth = 10000;
+		final String xml = "<a>".repeat(depth) + "</a>".repeat(depth);
+		final Element before = load(xml);
+		final Element after = load(xml.replaceFirst("</a>", "<b/></a>"));
+		final List<Change> changes = ElementDiff.compare(before, after);
+		assertEquals(1, changes.size());
+		assertEquals(Type.ADDED, changes.get(0).type());
+	}
+
+	@Test
+	void invalid() {
+		assertThrows(IllegalArgumentException.class, () -> new Change(Type.ADDED, null, null));
+	}
+}
@@ -3,10 +3,16 @@ package org.sarge.lib.element;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.sarge.lib.element.Element.Content;
+import org.sarge.lib.util.SymbolTable;
 
 public class ElementLoaderTest {
 	private ElementLoader loader;
@@ -48,4 +54,250 @@ public class ElementLoaderTest {
 		assertNotNull(text);
 		assertEquals("text", text.toString());
 	}
+
+	@Test
+	void symbols() throws IOException {
+		final String xml = """
+				<root>
+					<child key="one" />
+					<child key="two" />
+				</root>
+		""";
+		final Element root = new ElementLoader(SymbolTable.of(10)).load(new StringReader(xml));
+		final List<Element> children = root.children().toList();
+		assertSame(children.get(0).name(), children.get(1).name());
+	}
+
+	@Test
+	void prefixed() throws IOException {
+		final String xml = """
+				<ns:root xmlns:ns="http://example.com" ns:attribute="value">
+					<![CDATA[text]]>
+				</ns:root>
+		""";
+		final Element root = loader.load(new StringReader(xml));
+		assertEquals("ns:root", root.name());
+		assertEquals("value", root.attribute("ns:attribute").toString());
+		assertEquals("text", root.text().toString());
+	}
+
+	@Test
+	void deep() throws IOException {
+		final int depth = 10_000;
+		final String xml = "<node>".repeat(depth) + "</node>".repeat(depth);
+		Element e = loader.load(new StringReader(xml));
+		for(int n = 1; n < depth; ++n) {
+			e = e.child();
+		}
+		assertEquals(0, e.size());
+	}
+
+	@Test
+	void invalid() {
+		assertThrows(IOException.class, () -> loader.load(new StringReader("<root>")));
+	}
+
+	@Test
+	void multiple() {
+		assertThrows(IOException.class, () -> loader.load(new StringReader("<a/><b/>")));
+	}
+
+	@Test
+	void trailing() throws IOException {
+		assertThrows(IOException.class, () -> loader.load(new StringReader("<a/>garbage")));
+		assertThrows(IOException.class, () -> loader.load(new StringReader("<a></a><")));
+		assertEquals("a", loader.load(new StringReader("<a/> <!-- comment --> <?instruction?>\n")).name());
+	}
+
+	@Test
+	void doctype() throws IOException {
+		final String xml = """
+				<!-- comment -->
+				<!DOCTYPE root [
+					<!ENTITY entity "text">
+				]>
+				<?instruction data?>
+				<root>&entity;</root>
+		""";
+		final Element root = loader.load(new StringReader(xml));
+		assertEquals("root", root.name());
+		assertEquals("text", root.text().toString());
+	}
+
+	@Nested
+	class StreamTests {
+		private static final String XML = """
+				<feed>
+					<record id="1">
+						<value>one</value>
+					</record>
+					<other>
+						<record id="ignored" />
+					</other>
+					<record id="2" />
+				</feed>
+		""";
+
+		@Test
+		void stream() throws IOException {
+			try(final Stream<Element> stream = loader.stream(new StringReader(XML), "feed/record")) {
+				final List<Element> records = stream.toList();
+				assertEquals(2, records.size());
+
+				final Element first = records.get(0);
+				assertEquals("record", first.name());
+				assertEquals("1", first.attribute("id").toString());
+				assertEquals("one", first.child("value").text().toString());
+				assertEquals(Optional.empty(), first.parent());
+
+				final Element second = records.get(1);
+				assertEquals("2", second.attribute("id").toString());
+			}
+		}
+
+		@Test
+		void absolute() throws IOException {
+			try(final Stream<Element> stream = loader.stream(new StringReader(XML), "/feed/other/record")) {
+				final Element record = stream.findFirst().orElseThrow();
+				assertEquals("ignored", record.attribute("id").toString());
+			}
+		}
+
+		@Test
+		void root() throws IOException {
+			try(final Stream<Element> stream = loader.stream(new StringReader(XML), "feed")) {
+				assertEquals(1, stream.count());
+			}
+		}
+
+		@Test
+		void none() throws IOException {
+			try(final Stream<Element> stream = loader.stream(new StringReader(XML), "feed/cobblers")) {
+				assertEquals(0, stream.count());
+			}
+		}
+
+		@Test
+		void invalid() throws IOException {
+			try(final Stream<Element> stream = loader.stream(new StringReader("<feed><record>"), "feed/record")) {
+				assertThrows(UncheckedIOException.class, () -> stream.count());
+			}
+		}
+	}
+
+	@Nested
+	class FileTests {
+		@TempDir
+		Path dir;
+
+		@Test
+		void buffer() throws IOException {
+			final byte[] bytes = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><root>caf\u00e9</root>".getBytes(StandardCharsets.ISO_8859_1);
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			final Element root = loader.load(buffer);
+			assertEquals("caf\u00e9", root.text().toString());
+			assertEquals(0, buffer.position());
+		}
+
+		@Test
+		void path() throws IOException {
+			final Path path = Files.writeString(dir.resolve("small.xml"), "<root><child /></root>");
+			final Element root = loader.load(path);
+			assertEquals("root", root.name());
+			assertEquals(1, root.size());
+		}
+
+		@Test
+		void mapped() throws IOException {
+			final StringBuilder xml = new StringBuilder("<root>");
+			while(xml.length() < ElementLoader.MAP_THRESHOLD) {
+				xml.append("<child />");
+			}
+			xml.append("</root>");
+			final Path path = Files.writeString(dir.resolve("large.xml"), xml);
+			final Element root = loader.load(path);
+			assertEquals((xml.length() - 13) / 9, root.size());
+		}
+
+		@Test
+		void lazy() throws IOException {
+			final String xml = "<root a=\"1\"><child>text</child><child /></root>";
+			final Path path = Files.writeString(dir.resolve("lazy.xml"), xml);
+			final Element root = loader.lazy(path);
+			assertEquals("root", root.name());
+			assertEquals(2, root.size());
+			assertEquals(loader.load(new StringReader(xml)), root);
+		}
+
+		@Test
+		void lazyBuffer() throws IOException {
+			final ByteBuffer buffer = ByteBuffer.wrap("<root><child /></root>".getBytes(StandardCharsets.UTF_8));
+			assertEquals(1, loader.lazy(buffer).size());
+			assertEquals(0, buffer.position());
+		}
+
+		@Test
+		void stream() throws IOException {
+			final Path path = Files.writeString(dir.resolve("records.xml"), "<feed><record /><record /></feed>");
+			try(final Stream<Element> stream = loader.stream(path, "feed/record")) {
+				assertEquals(2, stream.count());
+			}
+		}
+	}
+
+	@Nested
+	class BatchTests {
+		@TempDir
+		Path dir;
+
+		private Path one, two, invalid;
+
+		@BeforeEach
+		void before() throws IOException {
+			one = Files.writeString(dir.resolve("one.xml"), "<one />");
+			two = Files.writeString(dir.resolve("two.xml"), "<two />");
+			invalid = Files.writeString(dir.resolve("invalid.xml"), "<invalid>");
+			Files.writeString(dir.resolve("ignored.txt"), "");
+		}
+
+		@Test
+		void loadAll() throws InterruptedException {
+			final var batch = loader.loadAll(List.of(two, one), 2);
+			assertEquals(true, batch.isSuccess());
+			assertEquals(List.of(two, one), List.copyOf(batch.elements().keySet()));
+			assertEquals(new Element("one"), batch.elements().get(one));
+			assertEquals(new Element("two"), batch.elements().get(two));
+		}
+
+		@Test
+		void errors() throws InterruptedException {
+			final Path missing = dir.resolve("missing.xml");
+			final var batch = loader.loadAll(List.of(one, invalid, missing));
+			assertEquals(false, batch.isSuccess());
+			assertEquals(Set.of(one), batch.elements().keySet());
+			assertEquals(Set.of(invalid, missing), batch.errors().keySet());
+			assertTrue(batch.errors().get(invalid) instanceof IOException);
+		}
+
+		@Test
+		void unmodifiable() throws InterruptedException {
+			final var batch = loader.loadAll(List.of(one, invalid));
+			assertThrows(UnsupportedOperationException.class, () -> batch.elements().clear());
+			assertThrows(UnsupportedOperationException.class, () -> batch.errors().clear());
+		}
+
+		@Test
+		void loadDirectory() throws Exception {
+			final var batch = loader.loadDirectory(dir, "*.xml");
+			assertEquals(Set.of(one, two), batch.elements().keySet());
+			assertEquals(Set.of(invalid), batch.errors().keySet());
+		}
+
+		@Test
+		void empty() throws InterruptedException {
+			final var batch = loader.loadAll(List.of());
+			assertEquals(true, batch.isSuccess());
+			assertEquals(Map.of(), batch.elements());
+		}
+	}
 }
@@ -0,0 +1,144 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class ElementQueryTest {
+	private Element root;
+	private Element first, second, third;
+
+	@BeforeEach
+	void before() {
+		root = new Element.Builder()
+				.name("root")
+				.child()
+					.name("a")
+					.child()
+						.name("b")
+						.attribute("id", "x")
+						.child("c", "one")
+						.child("c", "two")
+						.end()
+					.child()
+						.name("b")
+						.attribute("id", "y")
+						.child("c", "three")
+						.end()
+					.end()
+				.child()
+					.name("d")
+					.child()
+						.name("b")
+						.child("c", "four")
+						.end()
+					.end()
+				.build();
+
+		final Element a = root.child("a");
+		final List<Element> b = a.children("b").toList();
+		first = b.get(0).child();
+		second = b.get(0).children("c").toList().get(1);
+		third = b.get(1).child();
+	}
+
+	private List<Element> select(String expr) {
+		return ElementQuery.compile(expr).select(root);
+	}
+
+	@Test
+	void child() {
+		assertEquals(List.of(root.child("a")), select("a"));
+		assertEquals(List.of(first, second, third), select("a/b/c"));
+		assertEquals(List.of(), select("cobblers"));
+		assertEquals(List.of(), select("a/cobblers/c"));
+	}
+
+	@Test
+	void wildcard() {
+		assertEquals(4, select("*/b/c").size());
+		assertEquals(List.of(root.child("a"), root.child("d")), select("*"));
+	}
+
+	@Test
+	void attribute() {
+		assertEquals(List.of(first, second), select("a/b[@id='x']/c"));
+		assertEquals(List.of(third), select("a/b[@id=\"y\"]/c"));
+		assertEquals(List.of(first, second, third), select("*/b[@id]/c"));
+		assertEquals(List.of(), select("a/b[@id='z']/c"));
+	}
+
+	@Test
+	void position() {
+		assertEquals(List.of(third), select("a/b[2]/c"));
+		assertEquals(List.of(second), select("a/b/c[2]"));
+		assertEquals(List.of(), select("a/b[3]"));
+		assertEquals(List.of(third), select("a/b[@id='y'][2]/c"));
+		assertEquals(List.of(), select("a/b[2][@id='x']"));
+	}
+
+	@Test
+	void descendant() {
+		final Element fourth = root.child("d").child().child();
+		assertEquals(List.of(first, second, third, fourth), select("//c"));
+		assertEquals(List.of(first, second, third), select("a//c"));
+		assertEquals(List.of(second), select("a//c[2]"));
+		assertEquals(3, select("//b").size());
+	}
+
+	@Test
+	void nested() throws IOException {
+		final Element doc = new ElementLoader().load(new StringReader("<root><a><b n='1'/><a><b n='2'/></a><b n='3'/></a></root>"));
+		final List<String> results = ElementQuery.compile("//a/b").select(doc).stream().map(e -> e.attribute("n").toString()).toList();
+		assertEquals(List.of("1", "2", "3"), results);
+		assertEquals(List.of("1", "2", "3"), ElementQuery.compile("//b").select(doc).stream().map(e -> e.attribute("n").toString()).toList());
+	}
+
+	@Test
+	void absolute() {
+		assertEquals(List.of(root), ElementQuery.compile("/root").select(first));
+		assertEquals(List.of(first, second, third), ElementQuery.compile("/root/a/b/c").select(first));
+		assertEquals(List.of(), ElementQuery.compile("/cobblers/a").select(first));
+		assertEquals(List.of(root), ElementQuery.compile("//root").select(first));
+	}
+
+	@Test
+	void first() {
+		assertEquals(Optional.of(first), ElementQuery.compile("a/b/c").first(root));
+		assertEquals(Optional.empty(), ElementQuery.compile("cobblers").first(root));
+	}
+
+	@Test
+	void wide() {
+		final Element.Builder builder = new Element.Builder().name("root");
+		for(int n = 0; n < 100; ++n) {
+			builder.child()
+					.name("child")
+					.attribute("n", n)
+					.end();
+		}
+		final Element parent = builder.build();
+		final Element result = ElementQuery.compile("child[42]").first(parent).orElseThrow();
+		assertEquals("41", result.attribute("n").toString());
+	}
+
+	@Test
+	void compile() {
+		assertEquals("a/b[@id='x']/c", ElementQuery.compile("a/b[@id='x']/c").toString());
+		assertEquals("//a/*[2]", ElementQuery.compile("//a/*[2]").toString());
+	}
+
+	@Test
+	void invalid() {
+		assertThrows(IllegalArgumentException.class, () -> ElementQuery.compile(""));
+		assertThrows(IllegalArgumentException.class, () -> ElementQuery.compile("a/"));
+		assertThrows(IllegalArgumentException.class, () -> ElementQuery.compile("a[@id='x'"));
+		assertThrows(IllegalArgumentException.class, () -> ElementQuery.compile("a[@id='x]"));
+		assertThrows(IllegalArgumentException.class, () -> ElementQuery.compile("a[0]"));
+		assertThrows(IllegalArgumentException.class, () -> ElementQuery.compile("a[x]"));
+		assertThrows(IllegalArgumentException.class, () -> ElementQuery.compile("a]"));
+	}
+}
@@ -4,9 +4,12 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.*;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.*;
 import org.sarge.lib.element.Element.*;
+import org.sarge.lib.util.SymbolTable;
+import org.sarge.lib.util.TreeSpliterator.Order;
 
 public class ElementTest {
 	@DisplayName("A simple element...")
@@ -60,6 +63,12 @@ public class ElementTest {
 			assertEquals(List.of(element), element.path());
 		}
 
+		@DisplayName("has a location consisting of itself")
+		@Test
+		void location() {
+			assertEquals("/name", element.location());
+		}
+
 		@DisplayName("has no children")
 		@Test
 		void children() {
@@ -82,6 +91,21 @@ public class ElementTest {
 			final var e = element.new ElementException("doh");
 			assertEquals("doh at /name", e.getMessage());
 		}
+
+		@DisplayName("can raise an exception without a stack trace")
+		@Test
+		void stackless() {
+			Element.stackTraces(false);
+			try {
+				final var e = element.new ElementException("doh");
+				assertEquals(0, e.getStackTrace().length);
+				assertEquals("doh at /name", e.getMessage());
+			}
+			finally {
+				Element.stackTraces(true);
+			}
+			assertNotEquals(0, element.new ElementException("doh").getStackTrace().length);
+		}
 	}
 
 	@Nested
@@ -137,7 +161,100 @@ public class ElementTest {
 		void empty() {
 			final Content content = content(null);
 			assertEquals(false, content.isPresent());
-			assertThrows(ElementException.class, () -> content.toString());
+			final ElementException e = assertThrows(ElementException.class, () -> content.toString());
+			assertEquals("message at /name", e.getMessage());
+		}
+
+		@Test
+		void invalid() {
+			assertThrows(ElementException.class, () -> content("cobblers").toInteger());
+			assertThrows(ElementException.class, () -> content("cobblers").toFloat());
+			assertThrows(ElementException.class, () -> content("cobblers").toBoolean());
+			assertThrows(ElementException.class, () -> content(null).toInteger());
+		}
+	}
+
+	@DisplayName("An element has typed accessors...")
+	@Nested
+	class TypedTests {
+		private Element element;
+
+		@BeforeEach
+		void before() {
+			element = new Element.Builder()
+					.name("name")
+					.attribute("int", 42)
+					.attribute("long", 1L << 40)
+					.attribute("float", 0.5f)
+					.attribute("boolean", "TRUE")
+					.attribute("invalid", "cobblers")
+					.text("3")
+					.build();
+		}
+
+		@DisplayName("for attributes")
+		@Test
+		void attributes() {
+			assertEquals(42, element.intAttribute("int", 0));
+			assertEquals(1L << 40, element.longAttribute("long", 0));
+			assertEquals(0.5f, element.floatAttribute("float", 0));
+			assertEquals(true, element.booleanAttribute("boolean", false));
+		}
+
+		@DisplayName("parses floating-point values consistently with the JDK")
+		@Test
+		void decimal() {
+			final String[] values = {"0", "-0", "+1", "1.", ".5", "-0.1", "3.14159", "16777215", "16777216", "0.0000000001", "0.00000000001", "1e3", " 1", "NaN", "-Infinity", "1.5f", "0x1p3"};
+			for(String value : values) {
+				final float expected = Float.parseFloat(value);
+				assertEquals(expected, new Element.Builder().name("name").attribute("value", value).build().floatAttribute("value", 0), value);
+			}
+			final Random random = new Random(1);
+			for(int n = 0; n < 10_000; ++n) {
+				final String value = String.format("%d.%0" + (1 + random.nextInt(8)) + "d", random.nextInt(1000), random.nextInt(10_000_000));
+				assertEquals(Float.parseFloat(value), new Element("name", value).floatText(0), value);
+			}
+			assertThrows(ElementException.class, () -> new Element("name", ".").floatText(0));
+			assertThrows(ElementException.class, () -> new Element("name", "-").floatText(0));
+			assertThrows(ElementException.class, () -> new Element("name", "1.2.3").floatText(0));
+		}
+
+		@DisplayName("which return the default value if the attribute is not present")
+		@Test
+		void defaults() {
+			assertEquals(1, element.intAttribute("cobblers", 1));
+			assertEquals(2L, element.longAttribute("cobblers", 2));
+			assertEquals(3f, element.floatAttribute("cobblers", 3));
+			assertEquals(true, element.booleanAttribute("cobblers", true));
+		}
+
+		@DisplayName("for the text content")
+		@Test
+		void text() {
+			assertEquals(3, element.intText(0));
+			assertEquals(3L, element.longText(0));
+			assertEquals(3f, element.floatText(0));
+			assertEquals(false, new Element("name", "false").booleanText(true));
+		}
+
+		@DisplayName("which return the default value if the element does not have text content")
+		@Test
+		void empty() {
+			final Element empty = new Element("empty");
+			assertEquals(1, empty.intText(1));
+			assertEquals(2L, empty.longText(2));
+			assertEquals(3f, empty.floatText(3));
+			assertEquals(true, empty.booleanText(true));
+		}
+
+		@DisplayName("which fail if the value is invalid")
+		@Test
+		void invalid() {
+			assertThrows(ElementException.class, () -> element.intAttribute("invalid", 0));
+			assertThrows(ElementException.class, () -> element.longAttribute("invalid", 0));
+			assertThrows(ElementException.class, () -> element.floatAttribute("invalid", 0));
+			assertThrows(ElementException.class, () -> element.booleanAttribute("invalid", false));
+			assertThrows(ElementException.class, () -> element.booleanText(false));
 		}
 	}
 
@@ -197,6 +314,46 @@ public class ElementTest {
 		assertNotEquals(element, new Element("whatever"));
 	}
 
+	@Test
+	void hash() {
+		final Element element = new Element("name", Map.of("key", "value"), "text");
+		assertEquals(element.hashCode(), new Element("name", Map.of("key", "value"), "text").hashCode());
+		assertNotEquals(element.hashCode(), new Element("name", Map.of("key", "other"), "text").hashCode());
+	}
+
+	@DisplayName("Element trees are compared structurally ignoring the parent")
+	@Test
+	void tree() {
+		final Element one = new Element.Builder().name("parent").child("child", "text").build();
+		final Element two = new Element.Builder().name("parent").child("child", "text").build();
+		final Element other = new Element.Builder().name("parent").child("child", "other").build();
+		assertEquals(one, two);
+		assertEquals(one.hashCode(), two.hashCode());
+		assertEquals(one.child(), new Element("child", "text"));
+		assertEquals(one.child().hashCode(), new Element("child", "text").hashCode());
+		assertNotEquals(one, other);
+	}
+
+	@DisplayName("Deep element trees can be hashed and compared")
+	@Test
+	void deep() {
+		final Element.Builder one = new Element.Builder().name("node");
+		final Element.Builder two = new Element.Builder().name("node");
+		Element.Builder a = one, b = two;
+		for(int n = 0; n < 100_000; ++n) {
+			a = a.child().name("node");
+			b = b.child().name("node");
+		}
+		for(int n = 0; n < 100_000; ++n) {
+			a = a.end();
+			b = b.end();
+		}
+		final Element left = one.build();
+		final Element right = two.build();
+		assertEquals(left.hashCode(), right.hashCode());
+		assertEquals(left, right);
+	}
+
 	@DisplayName("A single child element...")
 	@Nested
 	class Child {
@@ -243,6 +400,73 @@ public class ElementTest {
 		}
 	}
 
+	@DisplayName("The descendants of an element...")
+	@Nested
+	class DescendantTests {
+		private Element root;
+
+		@BeforeEach
+		void before() {
+			root = new Element.Builder()
+					.name("root")
+					.child()
+						.name("a")
+						.child("b", "one")
+						.child("c", "two")
+						.end()
+					.child("d", "three")
+					.build();
+		}
+
+		private List<String> names(Stream<Element> stream) {
+			return stream.map(Element::name).toList();
+		}
+
+		@DisplayName("can be traversed in document order")
+		@Test
+		void descendants() {
+			assertEquals(List.of("a", "b", "c", "d"), names(root.descendants()));
+			assertEquals(List.of(), names(root.child("d").descendants()));
+		}
+
+		@DisplayName("can be traversed in post-order")
+		@Test
+		void post() {
+			assertEquals(List.of("b", "c", "a", "d"), names(root.descendants(Order.POST, __ -> false)));
+		}
+
+		@DisplayName("can be pruned")
+		@Test
+		void prune() {
+			assertEquals(List.of("d"), names(root.descendants(Order.PRE, e -> e.name().equals("a"))));
+		}
+
+		@DisplayName("can be traversed in parallel")
+		@Test
+		void parallel() {
+			final Element.Builder builder = new Element.Builder().name("root");
+			for(int n = 0; n < 1000; ++n) {
+				builder.child().name("child").child("leaf", String.valueOf(n)).end();
+			}
+			final Element wide = builder.build();
+			assertEquals(wide.descendants().toList(), wide.descendants().parallel().toList());
+			assertEquals(2000, wide.descendants().parallel().count());
+		}
+
+		@DisplayName("can be traversed for a very deep tree")
+		@Test
+		void deep() {
+			final TreeBuilder builder = new TreeBuilder();
+			for(int n = 0; n < 100000; ++n) {
+				builder.push("a");
+			}
+			for(int n = 0; n < 100000; ++n) {
+				builder.pop();
+			}
+			assertEquals(99999, builder.build().descendants().count());
+		}
+	}
+
 	@DisplayName("A sibling element...")
 	@Nested
 	class Sibling {
@@ -278,6 +502,34 @@ public class ElementTest {
 			assertEquals(one, parent.child("child"));
 		}
 
+		@DisplayName("has a location decorated with its sibling index")
+		@Test
+		void location() {
+			assertEquals("/parent", parent.location());
+			assertEquals("/parent/child", one.location());
+			assertEquals("/parent/child[2]", two.location());
+			assertEquals("/parent/other", other.location());
+			assertSame(two.location(), two.location());
+		}
+
+		@DisplayName("discards a cached location when it is subsequently attached to a parent")
+		@Test
+		void attach() {
+			final Element leaf = new Element("leaf");
+			final Element child = new Element.Builder().name("child").child(leaf).build();
+			assertEquals("/child/leaf", leaf.location());
+			final ElementException e = leaf.exception("doh");
+			final Element root = new Element.Builder()
+					.name("root")
+					.child(new Element("child"))
+					.child(child)
+					.build();
+			assertEquals(root, child.parent().orElseThrow());
+			assertEquals("/root/child[2]", child.location());
+			assertEquals("/root/child[2]/leaf", leaf.location());
+			assertEquals("doh at /root/child[2]/leaf", e.getMessage());
+		}
+
 		@DisplayName("can raise an exception containing its sibling index")
 		@Test
 		void exception() {
@@ -286,6 +538,50 @@ public class ElementTest {
 		}
 	}
 
+	@DisplayName("An element with a large number of children...")
+	@Nested
+	class Wide {
+		private Element parent;
+		private List<Element> children;
+
+		@BeforeEach
+		void before() {
+			final Element.Builder builder = new Element.Builder().name("parent");
+			for(int n = 0; n < 50; ++n) {
+				builder.child()
+						.name("child" + (n % 5))
+						.attribute("n", n)
+						.end();
+			}
+			parent = builder.build();
+			children = parent.children().toList();
+		}
+
+		@DisplayName("can select children by name")
+		@Test
+		void children() {
+			final List<Element> expected = children.stream().filter(e -> e.name().equals("child3")).toList();
+			assertEquals(10, expected.size());
+			assertEquals(expected, parent.children("child3").toList());
+			assertEquals(List.of(), parent.children("cobblers").toList());
+		}
+
+		@DisplayName("can retrieve the first child with a given name")
+		@Test
+		void child() {
+			assertSame(children.get(2), parent.child("child2"));
+			assertEquals(Optional.of(children.get(4)), parent.optional("child4"));
+			assertEquals(Optional.empty(), parent.optional("cobblers"));
+		}
+
+		@DisplayName("has children with sibling indices")
+		@Test
+		void index() {
+			assertEquals(1, children.get(1).index());
+			assertEquals(10, children.get(46).index());
+		}
+	}
+
 	@DisplayName("The builder for an element...")
 	@Nested
 	class BuilderTests {
@@ -357,6 +653,23 @@ public class ElementTest {
 			assertEquals(Optional.of(parent), actual.parent());
 		}
 
+		@DisplayName("can canonicalise element and attribute names")
+		@Test
+		void symbols() {
+			final SymbolTable symbols = SymbolTable.of(10);
+			final Element parent = new Element.Builder(symbols)
+					.name(new String("name"))
+					.attribute(new String("key"), "value")
+					.child()
+						.name(new String("name"))
+						.end()
+					.build();
+
+			final Element child = parent.child();
+			assertSame(parent.name(), child.name());
+			assertSame(symbols.intern("key"), parent.attributes().keySet().iterator().next());
+		}
+
 		@DisplayName("cannot complete construction if a child builder has not been ended")
 		@Test
 		void invalid() {
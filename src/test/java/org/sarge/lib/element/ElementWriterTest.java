@@ -0,0 +1,135 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.*;
+
+public class ElementWriterTest {
+	private Element root;
+	private StringWriter out;
+
+	@BeforeEach
+	void before() {
+		root = new Element.Builder()
+				.name("root")
+				.attribute("key", "value")
+				.child()
+					.name("child")
+					.text("text")
+					.child("leaf", "one")
+					.end()
+				.child()
+					.name("empty")
+					.end()
+				.build();
+
+		out = new StringWriter();
+	}
+
+	@Test
+	void simple() throws IOException {
+		new ElementWriter(out).write(new Element("root"));
+		assertEquals("<root/>", out.toString());
+	}
+
+	@Test
+	void compact() throws IOException {
+		new ElementWriter(out).write(root);
+		assertEquals("<root key=\"value\"><child>text<leaf>one</leaf></child><empty/></root>", out.toString());
+	}
+
+	@Test
+	void pretty() throws IOException {
+		new ElementWriter(out, true).write(root);
+		final String expected = """
+				<root key="value">
+					<child>
+						text
+						<leaf>one</leaf>
+					</child>
+					<empty/>
+				</root>""";
+		assertEquals(expected, out.toString());
+	}
+
+	@Test
+	void escape() throws IOException {
+		final Element element = new Element.Builder()
+				.name("root")
+				.attribute("attr", "\"<&>\"\n")
+				.text("<&>\" caf\u00e9")
+				.build();
+
+		new ElementWriter(out).write(element);
+		assertEquals("<root attr=\"&quot;&lt;&amp;&gt;&quot;&#10;\">&lt;&amp;&gt;\" caf\u00e9</root>", out.toString());
+	}
+
+	@Test
+	void carriage() throws IOException {
+		final Element element = new Element("root", "a\rb");
+		new ElementWriter(out).write(element);
+		assertEquals("<root>a&#13;b</root>", out.toString());
+		assertEquals(element, new ElementLoader().load(new StringReader(out.toString())));
+	}
+
+	@Test
+	void illegal() {
+		final ElementWriter writer = new ElementWriter(out);
+		assertThrows(CharConversionException.class, () -> writer.write(new Element("root", "bell\u0007")));
+		assertThrows(CharConversionException.class, () -> writer.write(new Element.Builder().name("root").attribute("attr", "\u0000").build()));
+		assertThrows(CharConversionException.class, () -> writer.write(new Element("root", "\uFFFF")));
+	}
+
+	@Test
+	void surrogates() throws IOException {
+		final ElementWriter writer = new ElementWriter(out);
+		assertThrows(CharConversionException.class, () -> writer.write(new Element("root", "x\uD800y")));
+		assertThrows(CharConversionException.class, () -> writer.write(new Element("root", "x\uD800")));
+		assertThrows(CharConversionException.class, () -> writer.write(new Element("root", "x\uDC00y")));
+		assertThrows(CharConversionException.class, () -> writer.write(new Element.Builder().name("root").attribute("attr", "\uDC00\uD800").build()));
+
+		final var bytes = new ByteArrayOutputStream();
+		new ElementWriter(bytes, false).write(new Element("root", "\uD83D\uDE00"));
+		assertEquals("<root>\uD83D\uDE00</root>", bytes.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void stream() throws IOException {
+		final var bytes = new ByteArrayOutputStream();
+		new ElementWriter(bytes, false).write(new Element("root", "caf\u00e9"));
+		assertEquals("<root>caf\u00e9</root>", bytes.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void channel() throws IOException {
+		final var bytes = new ByteArrayOutputStream();
+		new ElementWriter(Channels.newChannel(bytes), false).write(new Element("root"));
+		assertEquals("<root/>", bytes.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void roundTrip() throws IOException {
+		new ElementWriter(out, true).write(root);
+		final Element result = new ElementLoader().load(new StringReader(out.toString()));
+		assertEquals(root, result);
+	}
+
+	@Test
+	void deep() throws IOException {
+		final Element.Builder builder = new Element.Builder().name("node");
+		Element.Builder current = builder;
+		for(int n = 0; n < 10_000; ++n) {
+			current = current.child().name("node");
+		}
+		for(int n = 0; n < 10_000; ++n) {
+			current = current.end();
+		}
+		final Element element = builder.build();
+		new ElementWriter(out).write(element);
+		assertEquals(element, new ElementLoader().load(new StringReader(out.toString())));
+	}
+}
@@ -0,0 +1,142 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class JsonLoaderTest {
+	private JsonLoader loader;
+
+	@BeforeEach
+	void before() {
+		loader = new JsonLoader();
+	}
+
+	private Element load(String json) throws IOException {
+		return loader.load(new StringReader(json));
+	}
+
+	@DisplayName("A scalar member is loaded as an attribute")
+	@Test
+	void attributes() throws IOException {
+		final Element root = load("""
+				{
+					"string": "value",
+					"escaped": "quote\\" tab\\t unicode\\u0041 slash\\/",
+					"integer": 42,
+					"float": -1.5e3,
+					"boolean": true,
+					"null": null
+				}
+				""");
+
+		assertEquals("root", root.name());
+		assertEquals("value", root.attribute("string").toString());
+		assertEquals("quote\" tab\t unicodeA slash/", root.attribute("escaped").toString());
+		assertEquals(42, root.attribute("integer").toInteger());
+		assertEquals(-1500f, root.attribute("float").toFloat());
+		assertEquals(true, root.attribute("boolean").toBoolean());
+		assertEquals("", root.attribute("null").toString());
+	}
+
+	@DisplayName("An object member is loaded as a child element")
+	@Test
+	void object() throws IOException {
+		final Element root = load("""
+				{"parent": {"key": "value", "child": {"#text": "text"}, "empty": {}}}
+				""");
+
+		final Element parent = root.child("parent");
+		assertEquals(Map.of("key", "value"), parent.attributes());
+		assertEquals("text", parent.child("child").text().toString());
+		assertEquals(true, parent.child("empty").isEmpty());
+	}
+
+	@DisplayName("An array member is loaded as a child element per item")
+	@Test
+	void array() throws IOException {
+		final Element root = load("""
+				{"list": ["one", 2, {"key": "value"}], "empty": []}
+				""");
+
+		final List<Element> list = root.children("list").toList();
+		assertEquals(3, list.size());
+		assertEquals("one", list.get(0).text().toString());
+		assertEquals("2", list.get(1).text().toString());
+		assertEquals(Map.of("key", "value"), list.get(2).attributes());
+		assertEquals(0, root.children("empty").count());
+	}
+
+	@DisplayName("A top-level array is loaded as item elements")
+	@Test
+	void items() throws IOException {
+		final Element root = load("[\"one\", \"two\"]");
+		assertEquals(List.of(new Element(YamlLoader.ITEM, "one"), new Element(YamlLoader.ITEM, "two")), root.children().toList());
+	}
+
+	@DisplayName("A top-level scalar is loaded as the text content of the root element")
+	@Test
+	void scalar() throws IOException {
+		assertEquals("text", load("\"text\"").text().toString());
+	}
+
+	@DisplayName("A long string spanning the read buffer can be loaded")
+	@Test
+	void large() throws IOException {
+		final String value = "x".repeat(20_000) + "\\n";
+		final Element root = load("{\"key\": \"" + value + "\"}");
+		assertEquals("x".repeat(20_000) + "\n", root.attribute("key").toString());
+	}
+
+	@DisplayName("An invalid document cannot be loaded")
+	@Test
+	void invalid() {
+		assertThrows(IOException.class, () -> load("{"));
+		assertThrows(IOException.class, () -> load("{\"key\" 1}"));
+		assertThrows(IOException.class, () -> load("{\"key\": tru}"));
+		assertThrows(IOException.class, () -> load("{\"key\": 1 \"other\": 2}"));
+		assertThrows(IOException.class, () -> load("{\"key\": [[1]]}"));
+		assertThrows(IOException.class, () -> load("{\"key\": \"\\x\"}"));
+		assertThrows(IOException.class, () -> load("{\"key\": 1-}"));
+		assertThrows(IOException.class, () -> load("{} {}"));
+	}
+
+	@DisplayName("A number must conform to the JSON grammar")
+	@Test
+	void numbers() throws IOException {
+		final Element root = load("{\"a\": 0, \"b\": -1.5, \"c\": 2e10, \"d\": 3.25E-2, \"e\": -0}");
+		assertEquals(Map.of("a", "0", "b", "-1.5", "c", "2e10", "d", "3.25E-2", "e", "-0"), root.attributes());
+		for(String number : new String[]{"01", "1.", ".5", "-", "+1", "1e", "1e+", "1.e3", "--1", "1-"}) {
+			assertThrows(IOException.class, () -> load("{\"a\": " + number + "}"), number);
+		}
+	}
+
+	@DisplayName("A member cannot have an empty name")
+	@Test
+	void empty() {
+		final IOException e = assertThrows(IOException.class, () -> load("{\"\": 1}"));
+		assertEquals("Invalid JSON at offset 3: Empty member name", e.getMessage());
+		assertThrows(IOException.class, () -> load("{\"\": {}}"));
+		assertThrows(IOException.class, () -> load("{\"\": [1]}"));
+	}
+
+	@DisplayName("An equivalent JSON and YAML document are loaded as the same element tree")
+	@Test
+	void yaml() throws IOException {
+		final Element json = load("""
+				{"version": 1, "child": {"key": "value", "leaf": ["one", "two"]}}
+				""");
+
+		final Element yaml = new YamlLoader().load(new StringReader("""
+				version: 1
+				child:
+				  key: value
+				  leaf: [one, two]
+				"""));
+
+		assertEquals(yaml, json);
+	}
+}
@@ -0,0 +1,81 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+
+import org.junit.jupiter.api.*;
+
+public class JsonWriterTest {
+	private StringWriter out;
+	private JsonWriter writer;
+
+	@BeforeEach
+	void before() {
+		out = new StringWriter();
+		writer = new JsonWriter(out);
+	}
+
+	@Test
+	void simple() throws IOException {
+		writer.write(new Element("root"));
+		assertEquals("{}", out.toString());
+	}
+
+	@Test
+	void write() throws IOException {
+		final Element root = new Element.Builder()
+				.name("root")
+				.attribute("key", "value")
+				.text("text")
+				.child()
+					.name("object")
+					.attribute("a", 1)
+					.end()
+				.child("leaf", "one")
+				.child("leaf", "two")
+				.child("single", "text")
+				.child()
+					.name("empty")
+					.end()
+				.build();
+
+		writer.write(root);
+
+		final String expected = """
+				{"key":"value","#text":"text","object":{"a":"1"},"leaf":["one","two"],"single":["text"],"empty":{}}""";
+		assertEquals(expected, out.toString());
+	}
+
+	@Test
+	void escape() throws IOException {
+		writer.write(new Element("root", "quote\" slash\\ newline\n control\u0001"));
+		assertEquals("{\"#text\":\"quote\\\" slash\\\\ newline\\n control\\u0001\"}", out.toString());
+	}
+
+	@Test
+	void roundTrip() throws IOException {
+		final Element root = new Element.Builder()
+				.name("root")
+				.attribute("version", "1")
+				.child()
+					.name("child")
+					.attribute("key", "value")
+					.text("text")
+					.child("leaf", "one")
+					.child("leaf", "two")
+					.child()
+						.name("nested")
+						.child()
+							.name("deep")
+							.attribute("x", "y")
+							.end()
+						.end()
+					.end()
+				.build();
+
+		writer.write(root);
+
+		assertEquals(root, new JsonLoader().load(new StringReader(out.toString())));
+	}
+}
@@ -0,0 +1,129 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.*;
+import org.sarge.lib.util.SymbolTable;
+
+public class LazyDocumentTest {
+	private static final String XML = """
+			<?xml version="1.0" encoding="UTF-8"?>
+			<!DOCTYPE root [ <!ELEMENT root ANY> ]>
+			<!-- comment -->
+			<root version="1" xmlns:ns="http://example.com">
+				<ns:child ns:id="a &amp; b" empty=''>
+					text &lt;&#65;&#x42;&gt; <![CDATA[<raw>]]>
+				</ns:child>
+				<child>
+					<!-- ignored -->
+					caf\u00e9
+					<leaf/>
+				</child>
+				<child name="second">
+					<leaf attr = "x > y" />
+				</child>
+			</root>
+			""";
+
+	private static LazyDocument document(String xml) throws IOException {
+		return new LazyDocument(ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8)), SymbolTable.NONE);
+	}
+
+	@Test
+	void index() throws IOException {
+		assertEquals(6, document(XML).size());
+	}
+
+	@Test
+	void root() throws IOException {
+		final Element root = document(XML).root();
+		assertEquals("root", root.name());
+		assertEquals("1", root.attribute("version").toString());
+		assertEquals(false, root.text().isPresent());
+		assertEquals(3, root.size());
+	}
+
+	@Test
+	void children() throws IOException {
+		final Element root = document(XML).root();
+		final List<Element> children = root.children().toList();
+		assertEquals(List.of("ns:child", "child", "child"), children.stream().map(Element::name).toList());
+		assertEquals(2, children.get(2).index());
+		assertEquals(root, children.get(2).parent().orElseThrow());
+		assertEquals("/root/child[2]/leaf", children.get(2).child().location());
+	}
+
+	@Test
+	void attributes() throws IOException {
+		final Element child = document(XML).root().child("ns:child");
+		assertEquals("a & b", child.attribute("ns:id").toString());
+		assertEquals("", child.attribute("empty").toString());
+		assertEquals("x > y", document(XML).root().children("child").toList().get(1).child().attribute("attr").toString());
+	}
+
+	@Test
+	void text() throws IOException {
+		final Element root = document(XML).root();
+		assertEquals("text <AB> <raw>", root.child("ns:child").text().toString());
+		assertEquals("caf\u00e9", root.child("child").text().toString());
+	}
+
+	@Test
+	void normalise() throws IOException {
+		final Element root = document("<root attr=\"a\tb\r\nc\">one\r\ntwo\rthree</root>").root();
+		assertEquals("a b c", root.attribute("attr").toString());
+		assertEquals("one\ntwo\nthree", root.text().toString());
+	}
+
+	@Test
+	void equals() throws IOException {
+		final String xml = XML.replaceAll("<!DOCTYPE.*>", "");
+		final Element expected = new ElementLoader(SymbolTable.NONE).load(new StringReader(xml));
+		final Element root = document(xml).root();
+		assertEquals(expected.hashCode(), root.hashCode());
+		assertEquals(expected, root);
+		assertEquals(root, document(XML).root());
+	}
+
+	@Test
+	void deferred() throws IOException {
+		final Element root = document("<root><bad attr='&bogus;'/><good/></root>").root();
+		assertEquals(2, root.size());
+		assertEquals("good", root.child("good").name());
+		final Element bad = root.child("bad");
+		assertThrows(UncheckedIOException.class, () -> bad.attributes());
+	}
+
+	@Test
+	void deep() throws IOException {
+		final int depth = 10000;
+		final String xml = "<a>".repeat(depth) + "</a>".repeat(depth);
+		final Element root = document(xml).root();
+		assertEquals(new ElementLoader().load(new StringReader(xml)).hashCode(), root.hashCode());
+	}
+
+	@Test
+	void wide() throws IOException {
+		final String xml = "<root>" + "<child/>".repeat(1000) + "</root>";
+		final Element root = document(xml).root();
+		assertEquals(1000, root.size());
+		assertEquals(1000, root.children("child").count());
+	}
+
+	@Test
+	void invalid() {
+		assertThrows(IOException.class, () -> document(""));
+		assertThrows(IOException.class, () -> document("<root>"));
+		assertThrows(IOException.class, () -> document("<root></other>"));
+		assertThrows(IOException.class, () -> document("</root>"));
+		assertThrows(IOException.class, () -> document("<root/><root/>"));
+		assertThrows(IOException.class, () -> document("<root attr='unterminated></root>"));
+		assertThrows(IOException.class, () -> document("<root><!-- unterminated </root>"));
+		assertThrows(IOException.class, () -> document("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><root/>"));
+	}
+}
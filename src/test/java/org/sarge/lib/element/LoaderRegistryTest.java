@@ -2,7 +2,10 @@ package org.sarge.lib.element;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.*;
+import java.util.*;
 import java.util.function.Function;
+import java.util.stream.*;
 
 import org.junit.jupiter.api.*;
 import org.sarge.lib.element.Element.ElementException;
@@ -62,4 +65,300 @@ public class LoaderRegistryTest {
 		registry.register("doh", doh);
 		assertThrows(ElementException.class, () -> registry.load(new Element("doh")));
 	}
+
+	@Nested
+	class DispatcherTests {
+		@DisplayName("A registry can be compiled to a dispatcher")
+		@Test
+		void compile() {
+			registry.register("name", Element::name);
+			final var dispatcher = registry.compile();
+			assertEquals("name", dispatcher.apply(new Element("name")));
+			assertEquals("default", dispatcher.apply(new Element("default")));
+			assertEquals(true, dispatcher.contains("name"));
+			assertEquals(false, dispatcher.contains("cobblers"));
+		}
+
+		@DisplayName("A dispatcher is not affected by subsequent changes to the registry")
+		@Test
+		void immutable() {
+			final var dispatcher = registry.compile();
+			registry.register("name", Element::name);
+			assertThrows(ElementException.class, () -> dispatcher.apply(new Element("name")));
+		}
+
+		@DisplayName("A dispatcher can contain a large number of loaders")
+		@Test
+		void large() {
+			for(int n = 0; n < 1000; ++n) {
+				registry.literal("name" + n, String.valueOf(n));
+			}
+			final var dispatcher = registry.compile();
+			for(int n = 0; n < 1000; ++n) {
+				assertEquals(String.valueOf(n), dispatcher.apply(new Element("name" + n)));
+			}
+		}
+
+		@DisplayName("A dispatcher wraps loader failures")
+		@Test
+		void error() {
+			registry.register("doh", __ -> {
+				throw new RuntimeException("doh");
+			});
+			final var dispatcher = registry.compile();
+			assertThrows(ElementException.class, () -> dispatcher.apply(new Element("doh")));
+			assertThrows(ElementException.class, () -> dispatcher.apply(new Element("cobblers")));
+		}
+
+		@DisplayName("An empty registry can be compiled")
+		@Test
+		void empty() {
+			final var dispatcher = new LoaderRegistry<String>().compile();
+			assertEquals(false, dispatcher.contains("name"));
+		}
+	}
+
+	@Nested
+	class TryLoadTests {
+		@DisplayName("A successfully loaded element returns a result")
+		@Test
+		void success() {
+			final var result = registry.tryLoad(new Element("default"));
+			assertEquals(true, result.isSuccess());
+			assertEquals("default", result.value());
+			assertEquals("default", result.orElse("other"));
+			assertEquals("default", result.orElseThrow());
+			assertEquals(null, result.error());
+		}
+
+		@DisplayName("A failed load returns the failure rather than throwing an exception")
+		@Test
+		void failed() {
+			final var result = registry.tryLoad(new Element("cobblers"));
+			assertEquals(false, result.isSuccess());
+			assertEquals(null, result.value());
+			assertEquals("other", result.orElse("other"));
+			assertNotNull(result.error());
+			assertThrows(ElementException.class, () -> result.orElseThrow());
+		}
+
+		@DisplayName("A loader failure is captured by the result")
+		@Test
+		void error() {
+			registry.register("doh", __ -> {
+				throw new RuntimeException("doh");
+			});
+			final var result = registry.tryLoad(new Element("doh"));
+			assertEquals(false, result.isSuccess());
+			assertEquals(RuntimeException.class, result.error().getCause().getClass());
+		}
+	}
+
+	@Nested
+	class MemoizeTests {
+		private int count;
+
+		@BeforeEach
+		void before() {
+			count = 0;
+			registry.register("name", e -> {
+				++count;
+				return new String(e.text().toString());
+			});
+			registry.memoize(2);
+		}
+
+		@DisplayName("An identical element returns the same memoized result")
+		@Test
+		void identical() {
+			final String result = registry.load(new Element("name", "text"));
+			assertSame(result, registry.load(new Element("name", "text")));
+			assertEquals(1, count);
+		}
+
+		@DisplayName("A structurally different element is loaded separately")
+		@Test
+		void different() {
+			final String result = registry.load(new Element("name", "text"));
+			assertNotSame(result, registry.load(new Element("name", "other")));
+			assertEquals(2, count);
+		}
+
+		@DisplayName("Identical sub-trees in different locations return the same memoized result")
+		@Test
+		void subtree() {
+			final Element root = new Element.Builder()
+					.name("root")
+					.child().name("parent").child().name("name").text("text").end().end()
+					.child().name("other").child().name("name").text("text").end().end()
+					.build();
+			final String result = registry.load(root.child("parent").child("name"));
+			assertSame(result, registry.load(root.child("other").child("name")));
+			assertEquals(1, count);
+		}
+
+		@DisplayName("The least recently used result is discarded when the cache is full")
+		@Test
+		void bounded() {
+			registry.load(new Element("name", "one"));
+			registry.load(new Element("name", "two"));
+			registry.load(new Element("name", "three"));
+			registry.load(new Element("name", "one"));
+			assertEquals(4, count);
+		}
+
+		@DisplayName("A failed load is not memoized")
+		@Test
+		void error() {
+			registry.register("doh", __ -> {
+				++count;
+				throw new RuntimeException("doh");
+			});
+			assertThrows(ElementException.class, () -> registry.load(new Element("doh")));
+			assertThrows(ElementException.class, () -> registry.load(new Element("doh")));
+			assertEquals(2, count);
+		}
+
+		@DisplayName("A compiled dispatcher shares the memoized results of the registry")
+		@Test
+		void dispatcher() {
+			final String result = registry.load(new Element("name", "text"));
+			assertSame(result, registry.compile().apply(new Element("name", "text")));
+			assertEquals(1, count);
+		}
+
+		@DisplayName("Memoizing can be disabled")
+		@Test
+		void disable() {
+			registry.memoize(0);
+			registry.load(new Element("name", "text"));
+			registry.load(new Element("name", "text"));
+			assertEquals(2, count);
+		}
+	}
+
+	@Nested
+	class BatchTests {
+		private Element parent;
+
+		@BeforeEach
+		void before() {
+			registry.register("child", e -> e.attribute("n").toString());
+			final Element.Builder builder = new Element.Builder().name("parent");
+			for(int n = 0; n < 1000; ++n) {
+				builder.child().name("child").attribute("n", n).end();
+			}
+			parent = builder.build();
+		}
+
+		private List<String> expected(int size) {
+			return IntStream.range(0, size).mapToObj(String::valueOf).toList();
+		}
+
+		@DisplayName("The children of an element can be loaded in parallel")
+		@Test
+		void loadChildren() {
+			assertEquals(expected(1000), registry.loadChildren(parent));
+		}
+
+		@DisplayName("A stream of elements can be loaded in order")
+		@Test
+		void loadAll() {
+			assertEquals(expected(1000), registry.loadAll(parent.children()));
+			assertEquals(List.of(), registry.loadAll(Stream.empty()));
+		}
+
+		@DisplayName("A small batch is loaded sequentially")
+		@Test
+		void sequential() {
+			final Thread thread = Thread.currentThread();
+			registry.register("child", __ -> String.valueOf(Thread.currentThread() == thread));
+			registry.threshold(Integer.MAX_VALUE);
+			assertEquals(Set.of("true"), Set.copyOf(registry.loadChildren(parent)));
+		}
+
+		@DisplayName("All failures are aggregated into a single exception")
+		@Test
+		void failures() {
+			registry.register("child", e -> {
+				final int n = e.attribute("n").toInteger();
+				if(n % 100 == 0) throw new IllegalArgumentException("doh");
+				return String.valueOf(n);
+			});
+			final LoaderRegistry.LoadException e = assertThrows(LoaderRegistry.LoadException.class, () -> registry.loadChildren(parent));
+			assertEquals(10, e.errors().size());
+			assertEquals(10, e.getSuppressed().length);
+			assertEquals(true, e.errors().get(1).getMessage().endsWith("at /parent/child[101]"));
+			assertEquals(true, e.getMessage().startsWith("10 element(s) could not be loaded"));
+			assertEquals(1 + LoaderRegistry.LoadException.MAX_MESSAGES + 1, e.getMessage().lines().count());
+			assertEquals(true, e.getMessage().endsWith("... and 5 more"));
+		}
+
+		@DisplayName("The sequential threshold must be positive")
+		@Test
+		void threshold() {
+			assertThrows(IllegalArgumentException.class, () -> registry.threshold(0));
+		}
+	}
+
+	@Nested
+	class ReloadTests {
+		private List<Element> loaded;
+
+		@BeforeEach
+		void before() {
+			loaded = new ArrayList<>();
+			registry.register("child", e -> {
+				loaded.add(e);
+				return e.attribute("value").toString();
+			});
+		}
+
+		private Element load(String xml) throws IOException {
+			return new ElementLoader().load(new StringReader(xml));
+		}
+
+		@DisplayName("Only children containing a change are reloaded")
+		@Test
+		void reload() throws IOException {
+			final Element before = load("<root><child value='a'/><child value='b'><x/></child><child value='c'/></root>");
+			final Element after = load("<root><child value='a'/><child value='b'><x y='1'/></child><child value='d'/><child value='e'/></root>");
+			final List<String> results = List.of("a", "b", "c");
+			assertEquals(List.of("a", "b", "d", "e"), registry.reload(before, after, results));
+			assertEquals(after.children().skip(1).toList(), loaded);
+		}
+
+		@DisplayName("Removed children are discarded")
+		@Test
+		void removed() throws IOException {
+			final Element before = load("<root><child value='a'/><child value='b'/></root>");
+			final Element after = load("<root><child value='a'/></root>");
+			assertEquals(List.of("a"), registry.reload(before, after, List.of("a", "b")));
+			assertEquals(List.of(), loaded);
+		}
+
+		@DisplayName("Unchanged documents are not reloaded")
+		@Test
+		void unchanged() throws IOException {
+			final String xml = "<root><child value='a'/></root>";
+			assertEquals(List.of("cached"), registry.reload(load(xml), load(xml), List.of("cached")));
+			assertEquals(List.of(), loaded);
+		}
+
+		@DisplayName("All children are reloaded if the root element has changed")
+		@Test
+		void root() throws IOException {
+			final Element before = load("<root><child value='a'/></root>");
+			final Element after = load("<root version='2'><child value='a'/></root>");
+			assertEquals(List.of("a"), registry.reload(before, after, List.of("cached")));
+			assertEquals(1, loaded.size());
+		}
+
+		@DisplayName("The previous results must match the original document")
+		@Test
+		void invalid() throws IOException {
+			final Element root = load("<root><child value='a'/></root>");
+			assertThrows(IllegalArgumentException.class, () -> registry.reload(root, root, List.of()));
+		}
+	}
 }
@@ -0,0 +1,146 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+
+import org.junit.jupiter.api.*;
+
+public class SnapshotReaderTest {
+	private static Element read(byte[] bytes) throws IOException {
+		return new SnapshotReader(new ByteArrayInputStream(bytes)).read();
+	}
+
+	private static Element roundTrip(Element root) throws IOException {
+		final var out = new ByteArrayOutputStream();
+		new SnapshotWriter(out).write(root);
+		return read(out.toByteArray());
+	}
+
+	@DisplayName("A simple element can be persisted and reloaded")
+	@Test
+	void simple() throws IOException {
+		final Element element = new Element("name");
+		assertEquals(element, roundTrip(element));
+	}
+
+	@DisplayName("An element with attributes and text content can be persisted and reloaded")
+	@Test
+	void element() throws IOException {
+		final Element element = new Element.Builder()
+				.name("name")
+				.attribute("a", "1")
+				.attribute("b", "2")
+				.text("caf\u00e9 \u2603")
+				.build();
+
+		assertEquals(element, roundTrip(element));
+	}
+
+	@DisplayName("An element with empty text content can be persisted and reloaded")
+	@Test
+	void empty() throws IOException {
+		final Element element = new Element("name", "");
+		final Element result = roundTrip(element);
+		assertEquals(element, result);
+		assertEquals(true, result.text().isPresent());
+		assertEquals("", result.text().toString());
+	}
+
+	@DisplayName("An element tree can be persisted and reloaded")
+	@Test
+	void tree() throws IOException {
+		final Element root = new Element.Builder()
+				.name("root")
+				.attribute("version", "1")
+				.child()
+					.name("child")
+					.attribute("key", "value")
+					.child("leaf", "one")
+					.child("leaf", "two")
+					.end()
+				.child()
+					.name("child")
+					.end()
+				.child("other", "text")
+				.build();
+
+		final Element result = roundTrip(root);
+		assertEquals(root, result);
+		assertEquals("/root/child[2]", result.children("child").toList().get(1).location());
+	}
+
+	@DisplayName("A deep element tree can be persisted and reloaded")
+	@Test
+	void deep() throws IOException {
+		final Element.Builder root = new Element.Builder().name("node");
+		Element.Builder builder = root;
+		for(int n = 0; n < 10_000; ++n) {
+			builder = builder.child().name("node");
+		}
+		for(int n = 0; n < 10_000; ++n) {
+			builder = builder.end();
+		}
+		final Element element = root.build();
+		assertEquals(element, roundTrip(element));
+	}
+
+	@DisplayName("A wide element tree can be persisted and reloaded")
+	@Test
+	void wide() throws IOException {
+		final Element.Builder builder = new Element.Builder().name("root");
+		for(int n = 0; n < 1000; ++n) {
+			builder.child("child" + n, String.valueOf(n));
+		}
+		final Element root = builder.build();
+		assertEquals(root, roundTrip(root));
+	}
+
+	@DisplayName("A snapshot must have a valid header")
+	@Test
+	void header() {
+		assertThrows(IOException.class, () -> read(new byte[]{1, 2, 3, 4, 1}));
+		assertThrows(IOException.class, () -> read(new byte[]{0x45, 0x4C, 0x4D, 0x54, 2}));
+	}
+
+	@DisplayName("A snapshot cannot be truncated")
+	@Test
+	void truncated() {
+		assertThrows(IOException.class, () -> read(new byte[]{0x45, 0x4C, 0x4D, 0x54, 1, 1}));
+	}
+
+	@DisplayName("A snapshot cannot reference an invalid string table entry")
+	@Test
+	void index() {
+		assertThrows(IOException.class, () -> read(new byte[]{0x45, 0x4C, 0x4D, 0x54, 1, 0, 0}));
+	}
+
+	@DisplayName("A snapshot cannot contain a negative count, index or length")
+	@Test
+	void negative() {
+		final byte[] negative = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+		assertThrows(IOException.class, () -> read(snapshot(negative)));
+		assertThrows(IOException.class, () -> read(snapshot(new byte[]{0}, negative)));
+		assertThrows(IOException.class, () -> read(snapshot(new byte[]{1}, negative)));
+	}
+
+	@DisplayName("A snapshot with an oversized count or length fails without exhausting the heap")
+	@Test
+	void oversized() {
+		final byte[] max = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+		assertThrows(EOFException.class, () -> read(snapshot(max)));
+		assertThrows(EOFException.class, () -> read(snapshot(new byte[]{1}, max)));
+	}
+
+	/**
+	 * Creates a snapshot with a valid header followed by the given data.
+	 */
+	private static byte[] snapshot(byte[]... data) {
+		final var out = new ByteArrayOutputStream();
+		out.writeBytes(new byte[]{0x45, 0x4C, 0x4D, 0x54, 1});
+		for(byte[] bytes : data) {
+			out.writeBytes(bytes);
+		}
+		return out.toByteArray();
+	}
+}
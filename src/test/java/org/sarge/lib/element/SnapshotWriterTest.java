@@ -0,0 +1,66 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+
+import org.junit.jupiter.api.*;
+
+public class SnapshotWriterTest {
+	private ByteArrayOutputStream out;
+	private SnapshotWriter writer;
+
+	@BeforeEach
+	void before() {
+		out = new ByteArrayOutputStream();
+		writer = new SnapshotWriter(out);
+	}
+
+	@Test
+	void write() throws IOException {
+		final Element element = new Element.Builder()
+				.name("name")
+				.attribute("key", "value")
+				.text("text")
+				.build();
+
+		writer.write(element);
+
+		final byte[] expected = {
+				// Header
+				0x45, 0x4C, 0x4D, 0x54, 1,
+				// String table
+				3,
+				4, 'n', 'a', 'm', 'e',
+				3, 'k', 'e', 'y',
+				5, 'v', 'a', 'l', 'u', 'e',
+				// Element
+				0,
+				1, 1, 2,
+				5, 't', 'e', 'x', 't',
+				0
+		};
+		assertArrayEquals(expected, out.toByteArray());
+	}
+
+	@Test
+	void shared() throws IOException {
+		final Element element = new Element.Builder()
+				.name("name")
+				.child()
+					.name("name")
+					.end()
+				.build();
+
+		writer.write(element);
+
+		final byte[] expected = {
+				0x45, 0x4C, 0x4D, 0x54, 1,
+				1,
+				4, 'n', 'a', 'm', 'e',
+				0, 0, 0, 1,
+				0, 0, 0, 0
+		};
+		assertArrayEquals(expected, out.toByteArray());
+	}
+}
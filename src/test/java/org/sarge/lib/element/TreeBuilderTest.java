@@ -0,0 +1,127 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.*;
+import org.sarge.lib.util.SymbolTable;
+
+public class TreeBuilderTest {
+	private TreeBuilder builder;
+
+	@BeforeEach
+	void before() {
+		builder = new TreeBuilder();
+	}
+
+	@Test
+	void build() {
+		final Element root = builder
+				.push("root")
+				.attribute("a", "1")
+					.push("child")
+					.text("text")
+					.pop()
+					.push("child")
+					.pop()
+				.pop()
+				.build();
+
+		final Element expected = new Element.Builder()
+				.name("root")
+				.attribute("a", "1")
+				.child("child", "text")
+				.child()
+					.name("child")
+					.end()
+				.build();
+
+		assertEquals(expected, root);
+		assertEquals(2, root.size());
+		assertEquals(2, root.children().toList().get(1).index());
+		assertEquals(root, root.child().parent().orElseThrow());
+		assertEquals(0, builder.depth());
+	}
+
+	@Test
+	void duplicate() {
+		final Element root = builder.push("root").attribute("a", "1").attribute("a", "2").pop().build();
+		assertEquals(Map.of("a", "2"), root.attributes());
+	}
+
+	@Test
+	void attributes() {
+		builder.push("root");
+		for(int n = 0; n < 20; ++n) {
+			builder.attribute("a" + n, String.valueOf(n));
+		}
+		final Element root = builder.pop().build();
+		assertEquals(20, root.attributes().size());
+		assertEquals("19", root.attributes().get("a19"));
+	}
+
+	@Test
+	void wide() {
+		builder.push("root");
+		for(int n = 0; n < 1000; ++n) {
+			builder.push("child").attribute("n", String.valueOf(n)).pop();
+		}
+		final Element root = builder.pop().build();
+		assertEquals(1000, root.size());
+		assertEquals(1000, root.children().toList().get(999).index());
+		assertThrows(UnsupportedOperationException.class, () -> root.childList().clear());
+	}
+
+	@Test
+	void deep() {
+		final int depth = 10000;
+		for(int n = 0; n < depth; ++n) {
+			builder.push("a");
+		}
+		for(int n = 0; n < depth; ++n) {
+			builder.pop();
+		}
+		Element e = builder.build();
+		int count = 1;
+		while(e.size() > 0) {
+			e = e.child();
+			++count;
+		}
+		assertEquals(depth, count);
+	}
+
+	@Test
+	void reuse() {
+		final Element first = builder.push("root").push("child").pop().pop().build();
+		final Element second = builder.push("root").push("child").pop().pop().build();
+		assertEquals(first, second);
+		assertNotSame(first, second);
+	}
+
+	@Test
+	void symbols() {
+		builder = new TreeBuilder(SymbolTable.of(16));
+		final Element root = builder.push(new String("root")).attribute(new String("a"), "1").pop().build();
+		final Element other = builder.push(new String("root")).attribute(new String("a"), "1").pop().build();
+		assertSame(root.name(), other.name());
+	}
+
+	@Test
+	void reset() {
+		builder.push("root").push("child");
+		builder.reset();
+		assertEquals(0, builder.depth());
+		assertEquals("other", builder.push("other").pop().build().name());
+	}
+
+	@Test
+	void invalid() {
+		assertThrows(IllegalStateException.class, () -> builder.pop());
+		assertThrows(IllegalStateException.class, () -> builder.attribute("a", "b"));
+		assertThrows(IllegalStateException.class, () -> builder.text("text"));
+		assertThrows(IllegalStateException.class, () -> builder.build());
+		builder.push("root").pop();
+		assertThrows(IllegalStateException.class, () -> builder.push("other"));
+	}
+}
@@ -0,0 +1,241 @@
+package org.sarge.lib.element;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.jupiter.api.*;
+
+public class YamlLoaderTest {
+	private YamlLoader loader;
+
+	@BeforeEach
+	void before() {
+		loader = new YamlLoader();
+	}
+
+	private Element load(String yaml) throws IOException {
+		return loader.load(new StringReader(yaml));
+	}
+
+	@DisplayName("A scalar mapping entry is loaded as an attribute")
+	@Test
+	void attributes() throws IOException {
+		final Element root = load("""
+				# Comment
+				name: value
+				quoted: "a: b # c"
+				single: 'it''s'
+				escaped: "tab\\tunicode\\u0041"
+				number: 42   # trailing comment
+				empty: ~
+				""");
+
+		assertEquals("root", root.name());
+		assertEquals("value", root.attribute("name").toString());
+		assertEquals("a: b # c", root.attribute("quoted").toString());
+		assertEquals("it's", root.attribute("single").toString());
+		assertEquals("tab\tunicodeA", root.attribute("escaped").toString());
+		assertEquals(42, root.attribute("number").toInteger());
+		assertEquals("", root.attribute("empty").toString());
+	}
+
+	@DisplayName("A nested mapping is loaded as a child element")
+	@Test
+	void mapping() throws IOException {
+		final Element root = load("""
+				parent:
+				  key: value
+				  child:
+				    nested: true
+				  empty:
+				other: 1
+				""");
+
+		final Element parent = root.child("parent");
+		assertEquals(Map.of("key", "value"), parent.attributes());
+		assertEquals(true, parent.child("child").attribute("nested").toBoolean());
+		assertEquals(true, parent.child("empty").isEmpty());
+		assertEquals("1", root.attribute("other").toString());
+	}
+
+	@DisplayName("A sequence is loaded as a child element per item")
+	@Test
+	void sequence() throws IOException {
+		final Element root = load("""
+				list:
+				  - one
+				  - two
+				same:
+				- three
+				objects:
+				  - name: first
+				    value: 1
+				  -
+				    name: second
+				""");
+
+		assertEquals(List.of(new Element("list", "one"), new Element("list", "two")), root.children("list").toList());
+		assertEquals(List.of(new Element("same", "three")), root.children("same").toList());
+
+		final List<Element> objects = root.children("objects").toList();
+		assertEquals(2, objects.size());
+		assertEquals(Map.of("name", "first", "value", "1"), objects.get(0).attributes());
+		assertEquals(Map.of("name", "second"), objects.get(1).attributes());
+	}
+
+	@DisplayName("Flow collections are loaded as attributes and child elements")
+	@Test
+	void flow() throws IOException {
+		final Element root = load("""
+				point: {x: 1, y: "2", nested: {z: 3}}
+				list: [a, 'b', {c: d}]
+				multiline: [
+				  one,
+				  two
+				]
+				empty: []
+				""");
+
+		final Element point = root.child("point");
+		assertEquals(Map.of("x", "1", "y", "2"), point.attributes());
+		assertEquals(Map.of("z", "3"), point.child("nested").attributes());
+
+		final List<Element> list = root.children("list").toList();
+		assertEquals(3, list.size());
+		assertEquals("a", list.get(0).text().toString());
+		assertEquals("b", list.get(1).text().toString());
+		assertEquals(Map.of("c", "d"), list.get(2).attributes());
+
+		assertEquals(2, root.children("multiline").count());
+		assertEquals(0, root.children("empty").count());
+	}
+
+	@DisplayName("A null value is loaded as an empty attribute in both block and flow mappings")
+	@Test
+	void nulls() throws IOException {
+		final Element root = load("""
+				tilde: ~
+				word: null
+				flow: {tilde: ~, word: null, empty: , absent}
+				""");
+
+		final Element flow = root.child("flow");
+		assertEquals(Map.of("tilde", "", "word", ""), root.attributes());
+		assertEquals(Map.of("tilde", "", "word", ""), flow.attributes());
+		assertEquals(true, flow.child("empty").isEmpty());
+		assertEquals(true, flow.child("absent").isEmpty());
+	}
+
+	@DisplayName("Block scalars are loaded as attributes")
+	@Test
+	void block() throws IOException {
+		final Element root = load("""
+				literal: |
+				  line one
+				    indented
+
+				  line three
+				folded: >-
+				  folded
+				  text
+				after: value
+				""");
+
+		assertEquals("line one\n  indented\n\nline three\n", root.attribute("literal").toString());
+		assertEquals("folded text", root.attribute("folded").toString());
+		assertEquals("value", root.attribute("after").toString());
+	}
+
+	@DisplayName("An escaped quote in a single-quoted scalar does not terminate the scalar")
+	@Test
+	void escaped() throws IOException {
+		final Element root = load("""
+				q: 'it''s # not a comment' # comment
+				'k: ''x''': 'a: b'
+				flow: {q: 'it''s # not, a: comment'}
+				""");
+
+		assertEquals("it's # not a comment", root.attribute("q").toString());
+		assertEquals("a: b", root.attribute("k: 'x'").toString());
+		assertEquals("it's # not, a: comment", root.child("flow").attribute("q").toString());
+	}
+
+	@DisplayName("Blank lines in a folded block scalar are preserved as line breaks")
+	@Test
+	void folded() throws IOException {
+		final Element root = load("""
+				one: >-
+				  a
+				  b
+
+				  c
+				two: >
+				  a
+
+
+				  b
+				""");
+
+		assertEquals("a b\nc", root.attribute("one").toString());
+		assertEquals("a\n\nb\n", root.attribute("two").toString());
+	}
+
+	@DisplayName("A top-level sequence is loaded as item elements")
+	@Test
+	void items() throws IOException {
+		final Element root = load("""
+				---
+				- one
+				- two
+				""");
+
+		assertEquals(List.of(new Element(YamlLoader.ITEM, "one"), new Element(YamlLoader.ITEM, "two")), root.children().toList());
+	}
+
+	@DisplayName("A scalar document is loaded as the text content of the root element")
+	@Test
+	void scalar() throws IOException {
+		assertEquals("text", load("text").text().toString());
+	}
+
+	@DisplayName("An empty document is loaded as an empty root element")
+	@Test
+	void empty() throws IOException {
+		assertEquals(new Element("root"), load("# nothing"));
+	}
+
+	@DisplayName("An invalid document cannot be loaded")
+	@Test
+	void invalid() {
+		assertThrows(IOException.class, () -> load("key: value\n  bad: indent"));
+		assertThrows(IOException.class, () -> load("key: value\nnot an entry"));
+		assertThrows(IOException.class, () -> load("list: [a, b"));
+		assertThrows(IOException.class, () -> load("key: \"unterminated"));
+		assertThrows(IOException.class, () -> load("list:\n  - - nested"));
+		assertThrows(IOException.class, () -> load("key:\n\tvalue: 1"));
+	}
+
+	@DisplayName("An equivalent XML and YAML document are loaded as the same element tree")
+	@Test
+	void xml() throws IOException {
+		final Element yaml = load("""
+				version: 1
+				child:
+				  key: value
+				  leaf: [one, two]
+				""");
+
+		final Element xml = new ElementLoader().load(new StringReader("""
+				<root version="1">
+					<child key="value">
+						<leaf>one</leaf>
+						<leaf>two</leaf>
+					</child>
+				</root>
+				"""));
+
+		assertEquals(xml, yaml);
+	}
+}
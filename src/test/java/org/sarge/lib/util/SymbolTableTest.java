@@ -0,0 +1,41 @@
+package org.sarge.lib.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+public class SymbolTableTest {
+	private SymbolTable table;
+
+	@BeforeEach
+	void before() {
+		table = SymbolTable.of(2);
+	}
+
+	@Test
+	void intern() {
+		final String str = new String("name");
+		assertSame(str, table.intern(str));
+		assertSame(str, table.intern(new String("name")));
+	}
+
+	@Test
+	void bounded() {
+		table.intern("one");
+		table.intern("two");
+		final String three = new String("three");
+		assertSame(three, table.intern(three));
+		assertNotSame(three, table.intern(new String("three")));
+	}
+
+	@Test
+	void none() {
+		final String str = new String("name");
+		assertSame(str, SymbolTable.NONE.intern(str));
+	}
+
+	@Test
+	void invalid() {
+		assertThrows(IllegalArgumentException.class, () -> SymbolTable.of(-1));
+	}
+}
@@ -0,0 +1,140 @@
+package org.sarge.lib.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+import org.junit.jupiter.api.*;
+import org.sarge.lib.util.TreeSpliterator.Order;
+
+public class TreeSpliteratorTest {
+	private record Node(int id, List<Node> children) {
+		Node(int id, Node... children) {
+			this(id, List.of(children));
+		}
+	}
+
+	private Node root;
+
+	@BeforeEach
+	void before() {
+		//      1
+		//    2   5
+		//   3 4   6
+		root = new Node(1, new Node(2, new Node(3), new Node(4)), new Node(5, new Node(6)));
+	}
+
+	private static List<Integer> traverse(Node root, Order order, Predicate<Node> prune, boolean parallel) {
+		final var spliterator = new TreeSpliterator<Node>(List.of(root), Node::children, order, prune);
+		return StreamSupport.stream(spliterator, parallel).map(Node::id).toList();
+	}
+
+	@Test
+	void pre() {
+		assertEquals(List.of(1, 2, 3, 4, 5, 6), traverse(root, Order.PRE, __ -> false, false));
+	}
+
+	@Test
+	void post() {
+		assertEquals(List.of(3, 4, 2, 6, 5, 1), traverse(root, Order.POST, __ -> false, false));
+	}
+
+	@Test
+	void prune() {
+		assertEquals(List.of(1, 5, 6), traverse(root, Order.PRE, n -> n.id == 2, false));
+		assertEquals(List.of(6, 5, 1), traverse(root, Order.POST, n -> n.id == 2, false));
+		assertEquals(List.of(), traverse(root, Order.PRE, n -> n.id == 1, false));
+	}
+
+	@Test
+	void deep() {
+		Node node = new Node(0);
+		for(int n = 1; n < 100000; ++n) {
+			node = new Node(n, node);
+		}
+		assertEquals(100000, traverse(node, Order.PRE, __ -> false, false).size());
+		assertEquals(0, traverse(node, Order.POST, __ -> false, false).get(0));
+	}
+
+	@Test
+	void split() {
+		final var spliterator = new TreeSpliterator<Node>(List.of(root), Node::children, Order.PRE, __ -> false);
+		final Spliterator<Node> prefix = spliterator.trySplit();
+		assertNotNull(prefix);
+		final List<Integer> list = new ArrayList<>();
+		prefix.forEachRemaining(n -> list.add(n.id));
+		spliterator.forEachRemaining(n -> list.add(n.id));
+		assertEquals(List.of(1, 2, 3, 4, 5, 6), list);
+	}
+
+	@Test
+	void exhausted() {
+		final var spliterator = new TreeSpliterator<Node>(List.of(), Node::children, Order.PRE, __ -> false);
+		assertNull(spliterator.trySplit());
+		assertEquals(false, spliterator.tryAdvance(__ -> fail("Unexpected node")));
+	}
+
+	@Nested
+	class ParallelTests {
+		private Node tree;
+		private int next;
+
+		@BeforeEach
+		void before() {
+			final Random random = new Random(42);
+			tree = build(random, 0);
+		}
+
+		private Node build(Random random, int depth) {
+			final int id = next++;
+			if(depth == 6) {
+				return new Node(id);
+			}
+			final int count = random.nextInt(6);
+			final List<Node> children = IntStream.range(0, count).mapToObj(__ -> build(random, depth + 1)).toList();
+			return new Node(id, children);
+		}
+
+		@Test
+		void pre() {
+			assertEquals(traverse(tree, Order.PRE, __ -> false, false), traverse(tree, Order.PRE, __ -> false, true));
+		}
+
+		@Test
+		void post() {
+			assertEquals(traverse(tree, Order.POST, __ -> false, false), traverse(tree, Order.POST, __ -> false, true));
+		}
+
+		@Test
+		void prune() {
+			final Predicate<Node> prune = n -> n.id % 7 == 0;
+			assertEquals(traverse(tree, Order.PRE, prune, false), traverse(tree, Order.PRE, prune, true));
+			assertEquals(traverse(tree, Order.POST, prune, false), traverse(tree, Order.POST, prune, true));
+		}
+
+		@Test
+		void splits() {
+			// Recursively split and check all nodes are visited exactly once in order
+			for(Order order : Order.values()) {
+				final List<Integer> expected = traverse(tree, order, __ -> false, false);
+				final List<Integer> actual = new ArrayList<>();
+				final Deque<Spliterator<Node>> stack = new ArrayDeque<>();
+				stack.push(new TreeSpliterator<>(List.of(tree), Node::children, order, __ -> false));
+				while(!stack.isEmpty()) {
+					final Spliterator<Node> s = stack.pop();
+					final Spliterator<Node> prefix = s.trySplit();
+					if(prefix == null) {
+						s.forEachRemaining(n -> actual.add(n.id));
+					}
+					else {
+						stack.push(s);
+						stack.push(prefix);
+					}
+				}
+				assertEquals(expected, actual);
+			}
+		}
+	}
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
+import org.sarge.lib.util.TreeSpliterator.Order;
 
 public class UtilityTest {
 	@Test
@@ -20,6 +21,18 @@ public class UtilityTest {
 		assertArrayEquals(new Node[]{root, child}, Utility.flatten(root, Node::children).toArray());
 	}
 
+	@Test
+	void traverse() {
+		record Node(String name, List<Node> children) {
+		}
+		final Node leaf = new Node("leaf", List.of());
+		final Node child = new Node("child", List.of(leaf));
+		final Node root = new Node("root", List.of(child));
+		assertEquals(List.of(root, child, leaf), Utility.traverse(root, Node::children).toList());
+		assertEquals(List.of(leaf, child, root), Utility.traverse(root, Node::children, Order.POST, __ -> false).toList());
+		assertEquals(List.of(root), Utility.traverse(root, Node::children, Order.PRE, n -> n == child).toList());
+	}
+
 	@Test
 	void distinct() {
 		assertEquals(true, Utility.distinct(List.of()));